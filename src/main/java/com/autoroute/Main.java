@@ -1,10 +1,11 @@
 package com.autoroute;
 
-import com.autoroute.logistic.LogisticUtils;
-import com.autoroute.logistic.PointVisiter;
+import com.autoroute.logistic.MemoryAdmission;
 import com.autoroute.logistic.RouteDistanceAlgorithm;
 import com.autoroute.logistic.LatLon;
 import com.autoroute.telegram.Bot;
+import com.autoroute.telegram.JobQueue;
+import com.autoroute.telegram.RouteStreamer;
 import com.autoroute.telegram.db.Database;
 import com.autoroute.telegram.db.Row;
 import com.autoroute.telegram.db.Settings;
@@ -16,8 +17,13 @@ import org.apache.logging.log4j.Logger;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
 
@@ -27,66 +33,114 @@ public class Main {
 
         Settings sqlSettings = readSqlSettings();
         final Database db = new Database(sqlSettings);
-        Bot telegramBot = Bot.startBot(db);
+        final JobQueue jobs = new JobQueue();
+        // requests which weren't processed before the restart, the bot isn't started yet so it can't add them twice
+        final List<Row> readyRows = new ArrayList<>(db.getRowsByStateSortedByDate(State.SENT_DISTANCE));
+        // requests which were interrupted after the first part are built once again
+        readyRows.addAll(db.getRowsByStateSortedByDate(State.GOT_FIRST_PART));
+        readyRows.sort(Comparator.comparingLong(Row::date));
+        for (Row dbRow : readyRows) {
+            jobs.submit(dbRow);
+        }
+        LOGGER.info("recovered: {} rows from db", readyRows.size());
+        Bot telegramBot = Bot.startBot(db, jobs);
+
+        // requests are built at once while their graphs fit into the heap
+        final int threads = Utils.routeRequestThreads();
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        final MemoryAdmission admission = MemoryAdmission.forHeap();
+        LOGGER.info("request threads: {}, memory budget: {}MB", threads, admission.getBudgetBytes() >> 20);
+        for (int i = 0; i < threads; i++) {
+            workers.execute(() -> processJobs(db, telegramBot, jobs, admission));
+        }
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.DAYS)) {
+                LOGGER.info("jobs: {}", jobs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        int count = 0;
+    private static void processJobs(Database db, Bot telegramBot, JobQueue jobs, MemoryAdmission admission) {
         for (; ; ) {
+            final JobQueue.Job job;
             try {
-                final List<Row> readyRows = db.getRowsByStateSortedByDate(State.SENT_DISTANCE);
-                if (!readyRows.isEmpty()) {
-                    LOGGER.info("found: {} rows from db", readyRows.size());
-                }
-                for (Row dbRow : readyRows) {
-                    handleRouteRequest(db, telegramBot, dbRow);
+                job = jobs.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            final Row dbRow = job.row();
+            // requests with the same graph share it, so it's reserved once
+            final Path graphPath = Utils.pathForGraph(dbRow.startPoint(), dbRow.maxDistance());
+            long reserved = 0;
+            try {
+                final long admissionStart = System.currentTimeMillis();
+                reserved = admission.acquire(graphPath,
+                    MemoryAdmission.estimateSharedBytes(dbRow.maxDistance()),
+                    MemoryAdmission.estimateOwnBytes(dbRow.maxDistance()));
+                LOGGER.info("started row: {}, queue wait: {}ms, admission wait: {}ms, running: {}, reserved: {}MB",
+                    dbRow, job.queueWaitMs(), System.currentTimeMillis() - admissionStart,
+                    admission.getRunning(), admission.getReservedBytes() >> 20);
+                handleRouteRequest(db, telegramBot, dbRow);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable t) {
+                LOGGER.error("exception in request of row: {}", dbRow, t);
+                try {
+                    sendFailure(db, telegramBot, dbRow);
+                } catch (Throwable e) {
+                    LOGGER.error("couldn't report the failure of row: {}", dbRow, e);
                 }
-                if (readyRows.isEmpty()) {
-                    if (count % 1000 == 0) {
-                        LOGGER.info("didn't find any rows in db, sleeping...");
-                    }
-                    count++;
-                    Thread.sleep(10 * 1000);
+            } finally {
+                if (reserved > 0) {
+                    admission.release(graphPath, reserved);
                 }
-            } catch (Throwable t) {
-                LOGGER.error("exception in main: ", t);
-                // TODO: skip request for future process no eliminate infite loop over "bad" request. write to log/telegram about it.
             }
+            LOGGER.info("jobs: {}", jobs);
         }
     }
 
+    private static void sendFailure(Database db, Bot telegramBot, Row dbRow) {
+        db.updateRow(dbRow.withState(State.FAILED_TO_PROCESS));
+        telegramBot.sendMessage(dbRow.chatId(), "Seems like we couldn't build a route " +
+            "with your criteria:( Please provide another distances or start point");
+    }
+
     private static void handleRouteRequest(Database db, Bot telegramBot, Row dbRow) throws IOException {
         LOGGER.info("got a row: {}", dbRow);
         final LatLon startPoint = dbRow.startPoint();
 
         final String user = String.valueOf(dbRow.id());
-        var pointVisiter = new PointVisiter();
 
         final int minDistance = dbRow.minDistance();
         final int maxDistance = dbRow.maxDistance();
         final RouteDistanceAlgorithm routeDistanceAlgorithm = new RouteDistanceAlgorithm(startPoint, maxDistance, user);
 
-        var routes = routeDistanceAlgorithm.buildRoutes(startPoint,
-            minDistance, maxDistance, pointVisiter, 5);
+        final Path tracksFolder = Utils.pathForRoute(startPoint, minDistance, maxDistance, dbRow.chatId(), dbRow.date());
+        Utils.deleteDirectory(tracksFolder.toFile());
+        tracksFolder.toFile().mkdirs();
+        // routes are sent while the others are being built
+        final RouteStreamer streamer = new RouteStreamer(db, telegramBot, dbRow, tracksFolder);
+        final int sentRoutes;
+        try {
+            var routes = routeDistanceAlgorithm.buildRoutes(startPoint,
+                minDistance, maxDistance, RouteDistanceAlgorithm.DEFAULT_SEARCH_BUDGET_MS, streamer::onRoute);
+            sentRoutes = streamer.finish(routes);
+        } finally {
+            // the sender thread isn't daemon, it must be stopped if the build failed
+            streamer.close();
+        }
         final long chatId = dbRow.chatId();
-        if (routes.isEmpty()) {
+        if (sentRoutes == 0) {
             LOGGER.info("got routes = null for row: {}", dbRow);
-            db.updateRow(dbRow.withState(State.FAILED_TO_PROCESS));
-            telegramBot.sendMessage(chatId, "Seems like we couldn't build a route " +
-                "with your criteria:( Please provide another distances or start point");
+            sendFailure(db, telegramBot, dbRow);
             return;
         }
-
-        final Path tracksFolder = Utils.pathForRoute(startPoint, minDistance, maxDistance);
-        Utils.deleteDirectory(tracksFolder.toFile());
-        tracksFolder.toFile().mkdirs();
-        for (int i = 0; i < routes.size(); i++) {
-            var route = routes.get(i);
-            final String fileName = (i + 1) + "_" + ((int) (LogisticUtils.getCycleDistanceSlow(route.route()))) + "km";
-            Utils.writeGPX(route, tracksFolder.resolve(fileName).toString());
-        }
-        final Path zipPath = tracksFolder.resolve("routes.zip");
-        Utils.pack(tracksFolder, zipPath);
-        telegramBot.sendFile(chatId, zipPath);
-
+        LOGGER.info("time to the first route: {}ms for row: {}", streamer.getTimeToFirstRouteMs(), dbRow);
 
         db.updateRow(dbRow.withState(State.GOT_ALL_ROUTES));
         telegramBot.sendMessage(chatId,
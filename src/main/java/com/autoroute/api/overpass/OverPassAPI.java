@@ -33,6 +33,8 @@ public class OverPassAPI {
     };
     private final LatLon startVertex;
     private final int maxDistance;
+    // refs of ways are compared by reference
+    private final HMInterner interner = new HMInterner();
     private int indexURL;
 
     public OverPassAPI(LatLon startVertex, int maxDistance) {
@@ -130,7 +132,7 @@ public class OverPassAPI {
                 final List<Long> nodesList = way.getNodeIds();
                 long[] nodes = nodesList.stream().mapToLong(i -> i).toArray();
                 String refValue = way.getTags().get("ref");
-                refValue = HMInterner.INTERNER.intern(refValue);
+                refValue = interner.intern(refValue);
                 var w = new com.autoroute.api.overpass.Way(way.getId(), nodes, refValue);
                 response.add(w);
             }
@@ -160,11 +162,11 @@ public class OverPassAPI {
         return response;
     }
 
-    private static void mapTagsToArrays(Map<String, String> tags, String[] keys, String[] values) {
+    private void mapTagsToArrays(Map<String, String> tags, String[] keys, String[] values) {
         int i = 0;
         for (Map.Entry<String, String> e : tags.entrySet()) {
-            keys[i] = HMInterner.INTERNER.intern(e.getKey());
-            values[i] = HMInterner.INTERNER.intern(e.getValue());
+            keys[i] = interner.intern(e.getKey());
+            values[i] = interner.intern(e.getValue());
             i++;
         }
     }
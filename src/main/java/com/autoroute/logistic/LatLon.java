@@ -29,12 +29,13 @@ public record LatLon(double lat, double lon) implements Serializable, Comparable
     }
 
     public static double distanceKM(LatLon l1, LatLon l2) {
-        var lat1 = l1.lat;
-        var lat2 = l2.lat;
+        return distanceKM(l1.lat, l1.lon, l2.lat, l2.lon);
+    }
 
+    public static double distanceKM(double lat1, double lon1, double lat2, double lon2) {
         int R = 6371;
         double x =
-            (Math.toRadians(l2.lon) - Math.toRadians(l1.lon)) * Math.cos(0.5 * (Math.toRadians(lat2) + Math.toRadians(lat1)));
+            (Math.toRadians(lon2) - Math.toRadians(lon1)) * Math.cos(0.5 * (Math.toRadians(lat2) + Math.toRadians(lat1)));
         double y = Math.toRadians(lat2) - Math.toRadians(lat1);
         return R * Math.sqrt(x * x + y * y);
     }
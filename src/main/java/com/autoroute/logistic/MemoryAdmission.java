@@ -0,0 +1,190 @@
+package com.autoroute.logistic;
+
+import com.autoroute.logistic.rodes.dijkstra.DijkstraCache;
+import com.autoroute.logistic.rodes.dijkstra.Landmarks;
+import com.autoroute.utils.Utils;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Admits route builds by an estimated heap footprint of their graphs, so several requests run at once
+ * while they fit into the heap. Builds are admitted in the order of arrival, a big one isn't overtaken by small ones.
+ * A build which is bigger than the whole budget runs alone. Builds with the same full graph share it,
+ * so its bytes are reserved by the first one and released by the last one.
+ */
+public class MemoryAdmission {
+
+    // vertices of the full graph per km^2 of the roads box
+    static final long VERTICES_PER_SQUARE_KM = 16;
+    // vertex objects of the full graph, they are created on the heap for a mapped graph file too, + csr
+    static final long GRAPH_BYTES_PER_VERTEX = 384;
+    // compact graph + cycles of one request
+    static final long REQUEST_BYTES_PER_VERTEX = 128;
+    static final long LANDMARKS_BYTES_PER_VERTEX = (long) Float.BYTES * Landmarks.DEFAULT_COUNT;
+    // one DijkstraWorkspace: distances, parents, stamps and the heap
+    static final long WORKSPACE_BYTES_PER_VERTEX = 32;
+    static final long BASE_BYTES = 32L << 20;
+    // the rest of the heap is for telegram, database and garbage
+    private static final double HEAP_PART = 0.7;
+
+    private final long budgetBytes;
+    private long reservedBytes = 0;
+    private int running = 0;
+    private long nextTicket = 0;
+    private long headTicket = 0;
+    // tickets of interrupted builds which are not the head yet
+    private final Set<Long> skipped = new HashSet<>();
+    private final Map<Path, SharedGraph> sharedGraphs = new HashMap<>();
+
+    public MemoryAdmission(long budgetBytes) {
+        assert budgetBytes > 0;
+        this.budgetBytes = budgetBytes;
+    }
+
+    public static MemoryAdmission forHeap() {
+        return new MemoryAdmission((long) (Runtime.getRuntime().maxMemory() * HEAP_PART));
+    }
+
+    /**
+     * Roads are downloaded in the circle with {@link Utils#graphRadiusKM}, it's estimated by the bounding box.
+     */
+    private static long vertices(int maxDistanceKM) {
+        final double side = 2 * Utils.graphRadiusKM(maxDistanceKM);
+        return (long) (VERTICES_PER_SQUARE_KM * side * side);
+    }
+
+    /**
+     * The full graph with its landmarks and its cache, it's shared by concurrent requests with the same graph.
+     */
+    public static long estimateSharedBytes(int maxDistanceKM) {
+        return vertices(maxDistanceKM) * (GRAPH_BYTES_PER_VERTEX + LANDMARKS_BYTES_PER_VERTEX)
+            + DijkstraCache.defaultMaxBytes();
+    }
+
+    public static long estimateOwnBytes(int maxDistanceKM) {
+        // the request thread searches in the full graph too
+        return BASE_BYTES + vertices(maxDistanceKM)
+            * ownBytesPerVertex(Utils.cycleSearchThreads() + 1);
+    }
+
+    /**
+     * Every search thread keeps a forward and a backward workspace of the full graph,
+     * queries of the contraction hierarchy run over the same pair.
+     */
+    static long ownBytesPerVertex(int searchThreads) {
+        return REQUEST_BYTES_PER_VERTEX + searchThreads * 2 * WORKSPACE_BYTES_PER_VERTEX;
+    }
+
+    static long bytesPerVertex(int searchThreads) {
+        return GRAPH_BYTES_PER_VERTEX + LANDMARKS_BYTES_PER_VERTEX + ownBytesPerVertex(searchThreads);
+    }
+
+    /**
+     * Waits until the build fits into the budget.
+     *
+     * @return reserved bytes which must be given to release.
+     */
+    public synchronized long acquire(long bytes) throws InterruptedException {
+        return acquire(null, 0, bytes);
+    }
+
+    /**
+     * Waits until the build fits into the budget, bytes of its graph are needed only if nobody uses the graph.
+     *
+     * @param graphPath   the full graph of the build, null if it isn't shared.
+     * @param sharedBytes of the full graph.
+     * @param ownBytes    of the build itself.
+     * @return reserved own bytes which must be given to release with the same graphPath.
+     */
+    public synchronized long acquire(@Nullable Path graphPath, long sharedBytes, long ownBytes) throws InterruptedException {
+        final long ticket = nextTicket++;
+        try {
+            while (ticket != headTicket || (running > 0 && reservedBytes + needed(graphPath, sharedBytes, ownBytes) > budgetBytes)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            // the next build shouldn't wait for this one
+            if (ticket == headTicket) {
+                advanceHead();
+            } else {
+                skipped.add(ticket);
+            }
+            notifyAll();
+            throw e;
+        }
+        advanceHead();
+        if (graphPath != null) {
+            SharedGraph graph = sharedGraphs.get(graphPath);
+            if (graph == null) {
+                graph = new SharedGraph(Math.min(sharedBytes, budgetBytes));
+                sharedGraphs.put(graphPath, graph);
+                reservedBytes += graph.bytes;
+            }
+            graph.users++;
+        }
+        final long reserved = Math.min(ownBytes, budgetBytes);
+        reservedBytes += reserved;
+        running++;
+        notifyAll();
+        return reserved;
+    }
+
+    private long needed(@Nullable Path graphPath, long sharedBytes, long ownBytes) {
+        final boolean shared = graphPath == null || sharedGraphs.containsKey(graphPath);
+        return (shared ? 0 : sharedBytes) + ownBytes;
+    }
+
+    private void advanceHead() {
+        headTicket++;
+        while (skipped.remove(headTicket)) {
+            headTicket++;
+        }
+    }
+
+    public synchronized void release(long reserved) {
+        release(null, reserved);
+    }
+
+    public synchronized void release(@Nullable Path graphPath, long reserved) {
+        assert running > 0 && reservedBytes >= reserved;
+        reservedBytes -= reserved;
+        if (graphPath != null) {
+            final SharedGraph graph = sharedGraphs.get(graphPath);
+            assert graph != null && graph.users > 0;
+            graph.users--;
+            if (graph.users == 0) {
+                sharedGraphs.remove(graphPath);
+                reservedBytes -= graph.bytes;
+            }
+        }
+        running--;
+        notifyAll();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    private static final class SharedGraph {
+        private final long bytes;
+        private int users = 0;
+
+        private SharedGraph(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
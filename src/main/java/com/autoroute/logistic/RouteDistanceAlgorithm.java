@@ -16,21 +16,33 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class RouteDistanceAlgorithm {
 
     private static final Logger LOGGER = LogManager.getLogger(RouteDistanceAlgorithm.class);
-    private static final int CORES = 1; //Runtime.getRuntime().availableProcessors();
+    private static final int CYCLE_SEARCH_THREADS = Utils.cycleSearchThreads();
     private static final int MAX_FINDING_TIME = 1 * 60 * 1000;
+    public static final long DEFAULT_SEARCH_BUDGET_MS = 3 * 60 * 1000;
+    private static final int MAX_TRIES = 25000;
+    private static final int MAX_CYCLES = 100;
+    private static final int CANDIDATES_PER_EVALUATOR = 64;
 
     // TODO: moved ThreadPool from here
 
-    private static final ExecutorService OSM_POOL = Executors.newFixedThreadPool(CORES);
+    // several requests can wait for their sights at once
+    private static final ExecutorService OSM_POOL = Executors.newCachedThreadPool();
+    // requests with the same start and max distance search over one full graph
+    private static final GraphRegistry GRAPHS = new GraphRegistry();
 
     private final OverPassAPI overPassAPI;
 
@@ -43,15 +55,30 @@ public class RouteDistanceAlgorithm {
                                    int maxDistanceKM,
                                    PointVisiter pointVisiter,
                                    int threads) {
+        return buildRoutes(start, minDistanceKM, maxDistanceKM, DEFAULT_SEARCH_BUDGET_MS, route -> {
+        });
+    }
+
+    /**
+     * @param searchBudgetMs time for the search of cycles, routes found by this time are returned.
+     * @param onRoute        is called for every route with sights as soon as it's found, from threads of the search.
+     * @return routes with sights, the best first.
+     */
+    public List<Route> buildRoutes(LatLon start,
+                                   int minDistanceKM,
+                                   int maxDistanceKM,
+                                   long searchBudgetMs,
+                                   Consumer<Route> onRoute) {
         LOGGER.info("Start buildRoute");
-        final OverpassResponse rodes =
-            overPassAPI.getRodes(new LatLon(start.lat(), start.lon()), maxDistanceKM * 1000 / 2);
+        // roads are downloaded only if the full graph of the tile of the start is not saved yet
+        final Supplier<OverpassResponse> rodes = () -> overPassAPI.getRodes(Utils.graphCenter(start),
+            (int) (Utils.graphRadiusKM(maxDistanceKM) * 1000));
 
         // for fast testing only
-//        Utils.writeVertecesToFile(rodes);
-//        final OverpassResponse rodes = Utils.readVertices(new LatLon(start.lat(), start.lon()), 60);
+//        Utils.writeVertecesToFile(rodes.get());
+//        final Supplier<OverpassResponse> rodes = () -> Utils.readVertices(new LatLon(start.lat(), start.lon()), 60);
 
-        return buildRoutes(rodes, start, minDistanceKM, maxDistanceKM);
+        return buildRoutes(rodes, start, minDistanceKM, maxDistanceKM, searchBudgetMs, onRoute);
     }
 
     /**
@@ -62,31 +89,66 @@ public class RouteDistanceAlgorithm {
      * @param minDistance the minimum distance of the trip.
      * @param maxDistance the maximum distance of the trip.
      */
-    private List<Route> buildRoutes(OverpassResponse rodes,
+    private List<Route> buildRoutes(Supplier<OverpassResponse> rodes,
                                     LatLon start,
                                     int minDistance,
-                                    int maxDistance) {
+                                    int maxDistance,
+                                    long searchBudgetMs,
+                                    Consumer<Route> onRoute) {
         var tagsReader = new TagsFileReader();
         tagsReader.readTags();
 
         final Future<OverpassResponse> nodesFuture = getNodesAsync(start, maxDistance, tagsReader);
 
         long startBuildingGraph = System.currentTimeMillis();
-        final Graph fullGraph = GraphBuilder.buildFullGraph(rodes, start, minDistance, maxDistance);
-        DijkstraCache.createCache(fullGraph);
+        final Path graphPath = Utils.pathForGraph(start, maxDistance);
+        final Graph fullGraph = GRAPHS.acquire(graphPath, () -> {
+            final Graph g = GraphBuilder.loadOrBuildFullGraph(rodes, start, minDistance, maxDistance);
+            DijkstraCache.createCache(g);
+            g.freeze();
+            return g;
+        });
+        try {
+            return buildRoutes(fullGraph, nodesFuture, tagsReader, start, minDistance, maxDistance,
+                searchBudgetMs, startBuildingGraph, onRoute);
+        } finally {
+            GRAPHS.release(graphPath);
+        }
+    }
+
+    private List<Route> buildRoutes(Graph fullGraph,
+                                    Future<OverpassResponse> nodesFuture,
+                                    TagsFileReader tagsReader,
+                                    LatLon start,
+                                    int minDistance,
+                                    int maxDistance,
+                                    long searchBudgetMs,
+                                    long startBuildingGraph,
+                                    Consumer<Route> onRoute) {
         long finishBuildingGraph = System.currentTimeMillis();
         LOGGER.info("build graph for: {}s", (finishBuildingGraph - startBuildingGraph) / 1000);
         LOGGER.info("Start generateRoutes");
-        List<Route> routes = generateRoutes(rodes, start, minDistance, maxDistance, fullGraph);
+        // the async query was sent before the graph was built, it's waited before the search,
+        // so evaluators of cycles don't wait for it within the time budget of the search
+        final List<Sight> goodSights = getSights(nodesFuture, start, tagsReader);
+        final Map<Route, Route> routeWithSightsByRoute = Collections.synchronizedMap(new IdentityHashMap<>());
+        List<Route> routes = generateRoutes(start, fullGraph, minDistance, maxDistance, searchBudgetMs, route -> {
+            final Route newRoute = SightAdder.addSights(route, goodSights, fullGraph);
+            routeWithSightsByRoute.put(route, newRoute);
+            if (!newRoute.sights().isEmpty()) {
+                onRoute.accept(newRoute);
+            }
+        });
         long finishGeneratedRoutes = System.currentTimeMillis();
         LOGGER.info("generated routes for: {}s", (finishGeneratedRoutes - finishBuildingGraph) / 1000);
 
-        var goodSights = getSights(nodesFuture, start, tagsReader);
-
         List<Route> routesWithSights = new ArrayList<>();
         for (int i = 0; i < routes.size(); i++) {
             var vertices = routes.get(i);
-            final Route newRoute = SightAdder.addSights(vertices, goodSights, fullGraph);
+            Route newRoute = routeWithSightsByRoute.get(vertices);
+            if (newRoute == null) {
+                newRoute = SightAdder.addSights(vertices, goodSights, fullGraph);
+            }
             if (!newRoute.sights().isEmpty()) {
                 routesWithSights.add(newRoute);
             }
@@ -121,26 +183,34 @@ public class RouteDistanceAlgorithm {
         LOGGER.info("were: {} routes, with sights found: {}", routes.size(), routesWithSights.size());
         long finishAddingSights = System.currentTimeMillis();
         LOGGER.info("added sights for: {}s", (finishAddingSights - finishGeneratedRoutes) / 1000);
+        LOGGER.info("dijkstra stats: {}", fullGraph.getDijkstraStats());
+        LOGGER.info("dijkstra cache: {}", fullGraph.getDijkstraCache());
         return routesWithSights;
     }
 
     @NotNull
-    private static List<Route> generateRoutes(OverpassResponse rodes, LatLon start, int minDistance, int maxDistance, Graph fullGraph) {
+    private static List<Route> generateRoutes(LatLon start, Graph fullGraph, int minDistance, int maxDistance,
+                                              long searchBudgetMs, Consumer<Route> onRoute) {
         final Vertex startVertexFullGraph = fullGraph.findNearestVertex(start);
-        LOGGER.info("start building compact graph");
-        // TODO: can we reuse fullGraph not to build Vertexes, just copy it?
-        Graph compactGraph = GraphBuilder.buildCompactGraph(rodes, start,
-            startVertexFullGraph.getIdentificator(), minDistance, maxDistance, fullGraph);
+        // the pipeline needs all threads at once, so every request has its own pool.
+        // threads of the pool are dropped with the request, so they don't keep its graphs
+        final ExecutorService pool = Executors.newFixedThreadPool(CYCLE_SEARCH_THREADS);
+        try {
+            LOGGER.info("start building compact graph");
+            Graph compactGraph = GraphBuilder.buildCompactGraph(start, startVertexFullGraph.getIdentificator(), fullGraph,
+                minDistance, maxDistance, pool, CYCLE_SEARCH_THREADS);
 
-        var dijkstra = new DijkstraAlgorithm(fullGraph, startVertexFullGraph);
-        fullGraph.calculateDistanceForNeighbours();
-        fullGraph.buildIdentificatorToVertexMap();
-        dijkstra.run();
-        compactGraph.calculateDistanceForNeighbours();
+            var dijkstra = new DijkstraAlgorithm(fullGraph, startVertexFullGraph);
+            // a route goes to a cycle and back, so farther vertices can't be in a route
+            dijkstra.runWithin(maxDistance / 2.0);
+            compactGraph.calculateDistanceForNeighbours();
 
-        var startVertexCompactGraph = compactGraph.findNearestVertex(start);
-        assert startVertexFullGraph.getIdentificator() == startVertexCompactGraph.getIdentificator();
-        return generateRoutesFromGraph(compactGraph, startVertexCompactGraph, dijkstra);
+            var startVertexCompactGraph = compactGraph.findNearestVertex(start);
+            assert startVertexFullGraph.getIdentificator() == startVertexCompactGraph.getIdentificator();
+            return generateRoutesFromGraph(compactGraph, startVertexCompactGraph, dijkstra, pool, searchBudgetMs, onRoute);
+        } finally {
+            pool.shutdown();
+        }
     }
 
     private List<Sight> getSights(Future<OverpassResponse> nodesFuture, LatLon start, TagsFileReader tagsReader) {
@@ -189,89 +259,95 @@ public class RouteDistanceAlgorithm {
         });
     }
 
-    // TODO: make parallel, 1 dfs for every thread. duplicates in merge-thread once again?
     private static List<Route> generateRoutesFromGraph(Graph compactGraph,
                                                        Vertex startVertex,
-                                                       DijkstraAlgorithm dijkstra) {
+                                                       DijkstraAlgorithm dijkstra,
+                                                       ExecutorService pool,
+                                                       long searchBudgetMs,
+                                                       Consumer<Route> onRoute) {
         LOGGER.info("Final graph has: {} vertices", compactGraph.getVertices().size());
 
-        int tries = 0;
-        final List<Cycle> cycles = new ArrayList<>();
         compactGraph.calculateDistanceForNeighbours();
         compactGraph.buildIdentificatorToVertexMap();
-        int newSize;
-        List<Route> routes = new ArrayList<>();
-
-        long lastTimeFoundNewRouteTimestamp = System.currentTimeMillis();
-        do {
-            int oldSize = cycles.size();
-            compactGraph.findAllCycles(startVertex, cycles, dijkstra);
-
-            newSize = cycles.size();
-            if (newSize > oldSize) {
-                for (int i = oldSize; i < newSize; i++) {
-                    var cycle = cycles.get(i);
-                    LOGGER.info("wrote a cycle: {} with: {} vertexes", i + 1, cycle.size());
-
-                    dijkstra.assertStartVertex(startVertex);
-                    double minDistanceToCycle = Double.MAX_VALUE;
-                    Vertex closestVertex = null;
-                    int indexClosestVertex = -1;
-                    for (int j = 0; j < cycle.size(); j++) {
-                        Vertex v = cycle.getVertices().get(j);
-                        final double distanceToV = dijkstra.getDistance(v);
-                        if (distanceToV < minDistanceToCycle) {
-                            minDistanceToCycle = distanceToV;
-                            closestVertex = v;
-                            indexClosestVertex = j;
-                        }
-                        /*
-                        This assertion fails because we have vertexes from different graphs. change all  of them from fullGraph?
-                        if (j > 0) {
-                            Vertex u = cycle.getVertices().get(j - 1);
-                            assert u.containsNeighbor(v) : "route: " + (i + 1);
-                            assert v.containsNeighbor(u) : "route: " + (i + 1);
-                        }
-                        */
-                    }
-                    assert closestVertex != null;
-                    assert indexClosestVertex != -1;
-                    final List<Vertex> routeToCycle = dijkstra.getRouteFromFullGraph(closestVertex);
-
-                    final List<Vertex> fullRoute = new ArrayList<>(routeToCycle);
-                    int j = (indexClosestVertex + 1) % cycle.size();
-                    while (j != indexClosestVertex) {
-                        fullRoute.add(cycle.getVertices().get(j));
-                        j = (j + 1) % cycle.size();
-                    }
-                    // TODO: try to find another way back home if possible if not - take the same way.
-                    Collections.reverse(routeToCycle);
-                    fullRoute.addAll(routeToCycle);
-                    final double routeDistance = LogisticUtils.getCycleDistanceSlow(fullRoute);
-                    Route route = new Route(fullRoute, routeDistance);
-                    routes.add(route);
-                    // TODO: put distance in Route class which we return
+        final long startTime = System.currentTimeMillis();
+        final var limits = new CycleSearchLimits(MAX_CYCLES, MAX_TRIES, MAX_FINDING_TIME, searchBudgetMs);
+        // routes are built as soon as cycles are found, so the caller can show them before the end of the search
+        final Map<Cycle, Route> routeByCycle = new ConcurrentHashMap<>();
+        final AtomicInteger foundCycles = new AtomicInteger();
+        final var pipeline = new CyclePipeline(compactGraph, startVertex, dijkstra, limits, cycle -> {
+            final int index = foundCycles.getAndIncrement();
+            LOGGER.info("wrote a cycle: {} with: {} vertexes", index + 1, cycle.size());
+            final Route route = buildRoute(cycle, startVertex, dijkstra, index);
+            routeByCycle.put(cycle, route);
+            onRoute.accept(route);
+        });
+        final List<Cycle> cycles;
+        if (CYCLE_SEARCH_THREADS == 1) {
+            cycles = pipeline.runSerial(42);
+        } else {
+            // a few threads are enough for dfs, evaluation of a cycle is much more expensive
+            final int producers = Math.max(1, CYCLE_SEARCH_THREADS / 4);
+            final int evaluators = CYCLE_SEARCH_THREADS - producers;
+            cycles = pipeline.run(pool, producers, evaluators, CANDIDATES_PER_EVALUATOR * evaluators, 42);
+        }
+        final long searchTime = Math.max(1, System.currentTimeMillis() - startTime);
+        LOGGER.info("findAllCycles finished, found: {} cycles by: {} threads for: {}ms, {} cycles/s",
+            cycles.size(), CYCLE_SEARCH_THREADS, searchTime, String.format("%.2f", cycles.size() * 1000.0 / searchTime));
+        LOGGER.info("rejected cycles: {}", compactGraph.getRejectedCycles());
+        LOGGER.info("dfs stats: {}", compactGraph.getDfsStats());
 
-                    Utils.writeDebugGPX(fullRoute, "routes/" + (i + 1) + "_" + (int) routeDistance);
-                    lastTimeFoundNewRouteTimestamp = System.currentTimeMillis();
-                }
-                tries = 0;
+        List<Route> routes = new ArrayList<>();
+        for (Cycle cycle : cycles) {
+            final Route route = routeByCycle.get(cycle);
+            // the listener failed on this cycle, the error is logged by the pipeline
+            if (route == null) {
+                LOGGER.warn("skip a cycle with: {} vertexes without a route", cycle.size());
                 continue;
             }
-            tries++;
-            final long now = System.currentTimeMillis();
-            int maxTime = MAX_FINDING_TIME;
-            if (now - lastTimeFoundNewRouteTimestamp > maxTime) {
-                LOGGER.info("couldn't find a new route for more then: {} seconds", maxTime / 1000);
-                break;
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    private static Route buildRoute(Cycle cycle, Vertex startVertex, DijkstraAlgorithm dijkstra, int index) {
+        dijkstra.assertStartVertex(startVertex);
+        double minDistanceToCycle = Double.MAX_VALUE;
+        Vertex closestVertex = null;
+        int indexClosestVertex = -1;
+        for (int j = 0; j < cycle.size(); j++) {
+            Vertex v = cycle.getVertices().get(j);
+            final double distanceToV = dijkstra.getDistance(v);
+            if (distanceToV < minDistanceToCycle) {
+                minDistanceToCycle = distanceToV;
+                closestVertex = v;
+                indexClosestVertex = j;
             }
-            if (tries % 1000 == 0) {
-                LOGGER.info("build cycles tries: {}", tries);
+            /*
+            This assertion fails because we have vertexes from different graphs. change all  of them from fullGraph?
+            if (j > 0) {
+                Vertex u = cycle.getVertices().get(j - 1);
+                assert u.containsNeighbor(v) : "route: " + (index + 1);
+                assert v.containsNeighbor(u) : "route: " + (index + 1);
             }
-            // TODO: should depends on the distance. gives more tries for longer routes
-        } while (tries != 25000 && newSize < 100);
+            */
+        }
+        assert closestVertex != null;
+        assert indexClosestVertex != -1;
+        final List<Vertex> routeToCycle = dijkstra.getRouteFromFullGraph(closestVertex);
 
-        LOGGER.info("findAllCycles finished, found: {} cycles", cycles.size());
-        return routes;
+        final List<Vertex> fullRoute = new ArrayList<>(routeToCycle);
+        int j = (indexClosestVertex + 1) % cycle.size();
+        while (j != indexClosestVertex) {
+            fullRoute.add(cycle.getVertices().get(j));
+            j = (j + 1) % cycle.size();
+        }
+        // TODO: try to find another way back home if possible if not - take the same way.
+        Collections.reverse(routeToCycle);
+        fullRoute.addAll(routeToCycle);
+        final double routeDistance = LogisticUtils.getCycleDistanceSlow(fullRoute);
+        // TODO: put distance in Route class which we return
+
+        Utils.writeDebugGPX(fullRoute, "routes/" + (index + 1) + "_" + (int) routeDistance);
+        return new Route(fullRoute, routeDistance);
     }
 }
@@ -0,0 +1,190 @@
+package com.autoroute.logistic;
+
+import com.autoroute.logistic.rodes.Vertex;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid over lat/lon for nearest & radius queries. Vertices are identified by position - order of adding.
+ * Answers are exact by {@link LatLon#distanceKM}, the same as linear scan in {@link LogisticUtils#findNearestVertex}.
+ */
+public class SpatialIndex {
+
+    private static final double KM_IN_DEGREE = 6371 * Math.PI / 180;
+    private static final double MIN_CELL_KM = 0.05;
+    private static final double MAX_CELL_KM = 10;
+    private static final int VERTICES_PER_CELL = 4;
+
+    private final List<Vertex> vertices;
+    private final Long2ObjectOpenHashMap<IntArrayList> cells;
+    private final double cellLatDegrees;
+    private final double cellLonDegrees;
+    private int minRow = Integer.MAX_VALUE;
+    private int maxRow = Integer.MIN_VALUE;
+    private int minCol = Integer.MAX_VALUE;
+    private int maxCol = Integer.MIN_VALUE;
+    private double maxAbsLat = 0;
+
+    public SpatialIndex(List<Vertex> vertices) {
+        this(vertices, chooseCellKM(vertices));
+    }
+
+    public SpatialIndex(List<Vertex> vertices, double cellKM) {
+        assert cellKM > 0;
+        this.vertices = new ArrayList<>(vertices.size());
+        this.cells = new Long2ObjectOpenHashMap<>();
+        final double baseLat = vertices.isEmpty() ? 0 : vertices.get(0).getLatLon().lat();
+        this.cellLatDegrees = cellKM / KM_IN_DEGREE;
+        this.cellLonDegrees = cellKM / (KM_IN_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(baseLat))));
+        for (Vertex v : vertices) {
+            add(v);
+        }
+    }
+
+    private static double chooseCellKM(List<Vertex> vertices) {
+        if (vertices.size() < 2) {
+            return MAX_CELL_KM;
+        }
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        for (Vertex v : vertices) {
+            minLat = Math.min(minLat, v.getLatLon().lat());
+            maxLat = Math.max(maxLat, v.getLatLon().lat());
+            minLon = Math.min(minLon, v.getLatLon().lon());
+            maxLon = Math.max(maxLon, v.getLatLon().lon());
+        }
+        final double heightKM = (maxLat - minLat) * KM_IN_DEGREE;
+        final double widthKM = (maxLon - minLon) * KM_IN_DEGREE * Math.cos(Math.toRadians((maxLat + minLat) / 2));
+        final double cellKM = Math.sqrt(heightKM * widthKM * VERTICES_PER_CELL / vertices.size());
+        return Math.min(MAX_CELL_KM, Math.max(MIN_CELL_KM, cellKM));
+    }
+
+    public void add(Vertex v) {
+        final LatLon latLon = v.getLatLon();
+        final int row = row(latLon.lat());
+        final int col = col(latLon.lon());
+        final long key = key(row, col);
+        IntArrayList cell = cells.get(key);
+        if (cell == null) {
+            cell = new IntArrayList(VERTICES_PER_CELL);
+            cells.put(key, cell);
+        }
+        cell.add(vertices.size());
+        vertices.add(v);
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        minCol = Math.min(minCol, col);
+        maxCol = Math.max(maxCol, col);
+        maxAbsLat = Math.max(maxAbsLat, Math.abs(latLon.lat()));
+    }
+
+    public int size() {
+        return vertices.size();
+    }
+
+    public Vertex getVertex(int position) {
+        return vertices.get(position);
+    }
+
+    @Nullable
+    public Vertex findNearest(LatLon latLon) {
+        if (vertices.isEmpty()) {
+            return null;
+        }
+        final int row = row(latLon.lat());
+        final int col = col(latLon.lon());
+        final double ringKM = minCellKM(latLon);
+        final int maxRing = Math.max(
+            Math.max(Math.abs(row - minRow), Math.abs(row - maxRow)),
+            Math.max(Math.abs(col - minCol), Math.abs(col - maxCol)));
+
+        int bestPosition = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // every point in the ring is at least (ring - 1) cells away
+            if (bestPosition != -1 && (ring - 1) * ringKM > bestDistance) {
+                break;
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                final boolean borderRow = r == row - ring || r == row + ring;
+                final int step = borderRow ? 1 : 2 * ring;
+                for (int c = col - ring; c <= col + ring; c += Math.max(step, 1)) {
+                    final IntArrayList cell = cells.get(key(r, c));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < cell.size(); i++) {
+                        final int position = cell.getInt(i);
+                        final double d = LatLon.distanceKM(latLon, vertices.get(position).getLatLon());
+                        if (d < bestDistance || (d == bestDistance && position < bestPosition)) {
+                            bestDistance = d;
+                            bestPosition = position;
+                        }
+                    }
+                }
+            }
+        }
+        return vertices.get(bestPosition);
+    }
+
+    /**
+     * Calls consumer with positions of all vertices with distance < radiusKM.
+     */
+    public void forEachInRadius(LatLon latLon, double radiusKM, IntConsumer consumer) {
+        final int rows = (int) Math.ceil(radiusKM / KM_IN_DEGREE / cellLatDegrees);
+        final double lonKMInDegree = KM_IN_DEGREE * Math.cos(Math.toRadians(Math.max(maxAbsLat, Math.abs(latLon.lat()))));
+        final int cols = (int) Math.ceil(radiusKM / Math.max(lonKMInDegree, 1e-6) / cellLonDegrees);
+        final int row = row(latLon.lat());
+        final int col = col(latLon.lon());
+        for (int r = Math.max(row - rows, minRow); r <= Math.min(row + rows, maxRow); r++) {
+            for (int c = Math.max(col - cols, minCol); c <= Math.min(col + cols, maxCol); c++) {
+                final IntArrayList cell = cells.get(key(r, c));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    final int position = cell.getInt(i);
+                    if (LatLon.distanceKM(latLon, vertices.get(position).getLatLon()) < radiusKM) {
+                        consumer.accept(position);
+                    }
+                }
+            }
+        }
+    }
+
+    public List<Vertex> findInRadius(LatLon latLon, double radiusKM) {
+        IntArrayList positions = new IntArrayList();
+        forEachInRadius(latLon, radiusKM, positions::add);
+        positions.sort(null);
+        List<Vertex> result = new ArrayList<>(positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+            result.add(vertices.get(positions.getInt(i)));
+        }
+        return result;
+    }
+
+    private double minCellKM(LatLon latLon) {
+        final double maxLat = Math.max(maxAbsLat, Math.abs(latLon.lat()));
+        final double cellLonKM = cellLonDegrees * KM_IN_DEGREE * Math.cos(Math.toRadians(maxLat));
+        return Math.min(cellLatDegrees * KM_IN_DEGREE, cellLonKM);
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor(lat / cellLatDegrees);
+    }
+
+    private int col(double lon) {
+        return (int) Math.floor(lon / cellLonDegrees);
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+}
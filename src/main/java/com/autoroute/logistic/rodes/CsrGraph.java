@@ -0,0 +1,198 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compressed-sparse-row view of a road graph. Vertex i has outgoing edges [offsets[i], offsets[i + 1])
+ * in targets/weights, every undirected road is stored in both directions.
+ * Vertex ids are the same as {@link Vertex#getId()} of the graph it was built from.
+ * Arrays are kept in buffers: heap buffers for a built graph, mapped buffers for a graph from {@link GraphFile}.
+ */
+public class CsrGraph {
+
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final FloatBuffer weights;
+    private final DoubleBuffer lats;
+    private final DoubleBuffer lons;
+    private final LongBuffer identificators;
+    private final IntBuffer refIds; // index in refs or -1
+    private final String[] refs;
+
+    CsrGraph(IntBuffer offsets, IntBuffer targets, FloatBuffer weights,
+             DoubleBuffer lats, DoubleBuffer lons, LongBuffer identificators,
+             IntBuffer refIds, String[] refs) {
+        assert offsets.limit() == lats.limit() + 1;
+        assert targets.limit() == weights.limit();
+        assert lats.limit() == lons.limit() && lats.limit() == identificators.limit();
+        assert refIds.limit() == lats.limit();
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.lats = lats;
+        this.lons = lons;
+        this.identificators = identificators;
+        this.refIds = refIds;
+        this.refs = refs;
+    }
+
+    public static CsrGraph fromVertices(List<Vertex> vertices) {
+        final int n = vertices.size();
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            final Vertex v = vertices.get(i);
+            assert v.getId() == i;
+            offsets[i + 1] = offsets[i] + v.getNeighbors().size();
+        }
+        int[] targets = new int[offsets[n]];
+        float[] weights = new float[offsets[n]];
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        long[] identificators = new long[n];
+        int[] refIds = new int[n];
+        // refs are interned, so identity is enough
+        Map<String, Integer> refToId = new IdentityHashMap<>();
+        List<String> refs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            final Vertex v = vertices.get(i);
+            lats[i] = v.getLatLon().lat();
+            lons[i] = v.getLatLon().lon();
+            identificators[i] = v.getIdentificator();
+            refIds[i] = -1;
+            if (v.getRef() != null) {
+                Integer refId = refToId.get(v.getRef());
+                if (refId == null) {
+                    refId = refs.size();
+                    refs.add(v.getRef());
+                    refToId.put(v.getRef(), refId);
+                }
+                refIds[i] = refId;
+            }
+            final List<Vertex> neighbors = v.getNeighbors();
+            int e = offsets[i];
+            for (int j = 0; j < neighbors.size(); j++) {
+                final Vertex u = neighbors.get(j);
+                assert u.getId() < n;
+                targets[e] = u.getId();
+                weights[e] = (float) LatLon.distanceKM(v.getLatLon(), u.getLatLon());
+                e++;
+            }
+        }
+        return new CsrGraph(IntBuffer.wrap(offsets), IntBuffer.wrap(targets), FloatBuffer.wrap(weights),
+            DoubleBuffer.wrap(lats), DoubleBuffer.wrap(lons), LongBuffer.wrap(identificators),
+            IntBuffer.wrap(refIds), refs.toArray(new String[0]));
+    }
+
+    public int size() {
+        return identificators.limit();
+    }
+
+    public int edgesCount() {
+        return targets.limit();
+    }
+
+    public int edgesStart(int v) {
+        return offsets.get(v);
+    }
+
+    public int edgesEnd(int v) {
+        return offsets.get(v + 1);
+    }
+
+    public int degree(int v) {
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+
+    public int target(int edge) {
+        return targets.get(edge);
+    }
+
+    public float weight(int edge) {
+        return weights.get(edge);
+    }
+
+    /**
+     * @return index of the edge v -> u or -1 if there is no such edge.
+     */
+    public int findEdge(int v, int u) {
+        final int end = offsets.get(v + 1);
+        for (int e = offsets.get(v); e < end; e++) {
+            if (targets.get(e) == u) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    public double lat(int v) {
+        return lats.get(v);
+    }
+
+    public double lon(int v) {
+        return lons.get(v);
+    }
+
+    public LatLon latLon(int v) {
+        return new LatLon(lats.get(v), lons.get(v));
+    }
+
+    public long identificator(int v) {
+        return identificators.get(v);
+    }
+
+    @Nullable
+    public String ref(int v) {
+        final int refId = refIds.get(v);
+        return refId == -1 ? null : refs[refId];
+    }
+
+    int refId(int v) {
+        return refIds.get(v);
+    }
+
+    String[] refs() {
+        return refs;
+    }
+
+    /**
+     * @return true if arrays are off-heap (mapped from a file).
+     */
+    public boolean isDirect() {
+        return targets.isDirect();
+    }
+
+    /**
+     * Hash of offsets, targets and weights, so structures built for the graph can check it's the same graph.
+     */
+    public long checksum() {
+        long h = 1125899906842597L;
+        for (int i = 0; i < offsets.limit(); i++) {
+            h = 31 * h + offsets.get(i);
+        }
+        for (int e = 0; e < targets.limit(); e++) {
+            h = 31 * h + targets.get(e);
+            h = 31 * h + Float.floatToIntBits(weights.get(e));
+        }
+        return h;
+    }
+
+    public long memoryBytes() {
+        return 4L * offsets.limit()
+            + 4L * targets.limit()
+            + 4L * weights.limit()
+            + 8L * lats.limit()
+            + 8L * lons.limit()
+            + 8L * identificators.limit()
+            + 4L * refIds.limit();
+    }
+}
@@ -2,6 +2,9 @@ package com.autoroute.logistic.rodes;
 
 import com.autoroute.logistic.LogisticUtils;
 import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.PathView;
+import com.autoroute.logistic.rodes.dijkstra.SearchMode;
+import com.autoroute.logistic.rodes.dijkstra.SearchWorkspace;
 import com.autoroute.logistic.LatLon;
 import com.autoroute.utils.Utils;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
@@ -16,10 +19,13 @@ import java.util.*;
 public class Cycle {
 
     private static final Logger LOGGER = LogManager.getLogger(Cycle.class);
-    private static long DEBUG_COUNTER = 0;
 
     private final List<Vertex> vertices;
     private @Nullable List<Vertex> compactVertices = null;
+    // the cycle of the full graph which was built from this one by tryAddCycle
+    private @Nullable Cycle fullCycle = null;
+    private double distanceToCycle = Double.NaN;
+    private double cycleDistance = Double.NaN;
     private final Random r = new Random(43);
 
     public Cycle(List<Vertex> vertices) {
@@ -31,15 +37,23 @@ public class Cycle {
         this.compactVertices = compactVertices;
     }
 
-    // TODO: try cache with bad cycles? start,finish,distance - key?
-    public boolean tryAddCycle(Graph fullGraph, Vertex startVertex, List<Cycle> result,
-                               DijkstraAlgorithm dijkstra, int minKM, int maxKM) {
-        DEBUG_COUNTER++;
+    /**
+     * @param searchWorkspace is used by searches between vertices of the cycle, it belongs to the current thread.
+     * @return null if the cycle was added to result, otherwise the reason why it was rejected.
+     */
+    @Nullable
+    public RejectedCycleCache.Reason tryAddCycle(Graph fullGraph, @Nullable EdgeExpansions expansions, Vertex startVertex,
+                               List<Cycle> result, DijkstraAlgorithm dijkstra, SearchWorkspace searchWorkspace,
+                               int minKM, int maxKM) {
         assertFirstAndEndCycle();
         assert !hasDuplicateVertexes();
 
         final double distanceToCycle = minDistanceToCycle(startVertex, dijkstra);
-        final double cycleDistance = getCycleDistance(vertices);
+        if (distanceToCycle == Double.POSITIVE_INFINITY) {
+            return RejectedCycleCache.Reason.OUT_OF_RANGE;
+        }
+        // with expansions it's the length of roads, not a straight line through super vertices
+        final double cycleDistance = expansions != null ? expansions.length(vertices) : getCycleDistance(vertices);
         double routeDistance = distanceToCycle * 2 + cycleDistance;
         final int superVertexes = countSuperVertexes();
 
@@ -59,15 +73,15 @@ public class Cycle {
             assert !hasDuplicateVertexes();
 
             if (tooLongSuperVertexesDistance(cycleDistance)) {
-                return false;
+                return RejectedCycleCache.Reason.SUPER_VERTICES;
             }
 
-            if (!replaceSuperVertexesInPath(fullGraph)) {
-                return false;
+            if (!replaceSuperVertexesInPath(fullGraph, expansions, searchWorkspace)) {
+                return RejectedCycleCache.Reason.SUPER_VERTICES;
             }
             removeExternalCycles(getCycleDistance(vertices));
             if (hasDuplicateVertexes()) { // some weird cycle. can be debugged but easily just to skip to weird routes.
-                return false;
+                return RejectedCycleCache.Reason.BROKEN;
             }
             assert !hasDuplicateVertexes();
 
@@ -81,7 +95,7 @@ public class Cycle {
             }
 
             Utils.writeDebugGPX(vertices, "debug/" + "000");
-            removeExternalGoToAnotherRoadAndComeBack(fullGraph); // TODO: do it with full route, not with cycle
+            removeExternalGoToAnotherRoadAndComeBack(fullGraph, searchWorkspace); // TODO: do it with full route, not with cycle
             Utils.writeDebugGPX(vertices, "debug/" + "111");
 //            assert !hasDuplicateVertexes(); TODO: should this assert be here?
 
@@ -89,15 +103,15 @@ public class Cycle {
                 Utils.writeDebugGPX(vertices, "cycles/" + (result.size() + 1) + "_5");
             }
             if (isInCity(countSuperVertexes()) || isSmallCycle()) {
-                return false;
+                return isSmallCycle() ? RejectedCycleCache.Reason.SMALL : RejectedCycleCache.Reason.IN_CITY;
             }
 
             if (Utils.isDebugging()) {
                 Utils.writeDebugGPX(vertices, "cycles/" + (result.size() + 1) + "_6");
             }
 
-            if (!replaceSuperVertexesInPath(fullGraph)) {
-                return false;
+            if (!replaceSuperVertexesInPath(fullGraph, expansions, searchWorkspace)) {
+                return RejectedCycleCache.Reason.SUPER_VERTICES;
             }
 //            assert !hasDuplicateVertexes(); TODO: should this assert be here?
 
@@ -123,24 +137,70 @@ public class Cycle {
             var duplicateVertices = new ArrayList<>(fullCycle.vertices);
             var duplicateReversedVertices = new ArrayList<>(duplicateVertices);
             Collections.reverse(duplicateReversedVertices);
-            if (!hasDuplicate(duplicateVertices, result) && !hasDuplicate(duplicateReversedVertices, result)) {
-
-                // TODO: extract code to work only with fullCycle
-                final double distanceToFullCycle = fullCycle.minDistanceToCycle(startVertex, dijkstra);
-                final double cycleFullDistance = getCycleDistance(fullCycle.vertices);
-
-                // TODO: if we have straight road between i & i + X - then we need use it instead of road hook
-                if (isGoodDistance(cycleFullDistance, distanceToFullCycle, minKM, maxKM)) {
-                    // TODO: reverse cycle, depends on the country left/right roads
-                    fullCycle.setCompactVertices(duplicateVertices);
-                    result.add(fullCycle);
-                    LOGGER.info("index: {}, distanceToCycle: {}, cycleDistance: {}, routeDistance: {}, superVertexes: {}",
-                        result.size(), distanceToFullCycle, cycleFullDistance, routeDistance, superVertexes);
+            // TODO: extract code to work only with fullCycle
+            final double distanceToFullCycle = fullCycle.minDistanceToCycle(startVertex, dijkstra);
+            final double cycleFullDistance = getCycleDistance(fullCycle.vertices);
+
+            // result can be shared by several dfs workers, check for duplicates and add must be atomic
+            synchronized (result) {
+                if (!hasDuplicate(duplicateVertices, result) && !hasDuplicate(duplicateReversedVertices, result)) {
+                    // TODO: if we have straight road between i & i + X - then we need use it instead of road hook
+                    if (isGoodDistance(cycleFullDistance, distanceToFullCycle, minKM, maxKM)) {
+                        // TODO: reverse cycle, depends on the country left/right roads
+                        fullCycle.setCompactVertices(duplicateVertices);
+                        fullCycle.distanceToCycle = distanceToFullCycle;
+                        fullCycle.cycleDistance = cycleFullDistance;
+                        this.fullCycle = fullCycle;
+                        result.add(fullCycle);
+                        LOGGER.info("index: {}, distanceToCycle: {}, cycleDistance: {}, routeDistance: {}, superVertexes: {}",
+                            result.size(), distanceToFullCycle, cycleFullDistance, routeDistance, superVertexes);
+                        return null;
+                    }
+                    return RejectedCycleCache.Reason.DISTANCE;
                 }
-                return true;
             }
+            return RejectedCycleCache.Reason.DUPLICATE;
         }
-        return false;
+        if (!isGoodDistance(cycleDistance, distanceToCycle, minKM * 0.7, maxKM * 1.1)) {
+            return RejectedCycleCache.Reason.DISTANCE;
+        }
+        return isInCity(superVertexes) ? RejectedCycleCache.Reason.IN_CITY : RejectedCycleCache.Reason.SMALL;
+    }
+
+    @Nullable
+    Cycle getFullCycle() {
+        return fullCycle;
+    }
+
+    /**
+     * @return share of the cycle in the route, 1 for a route which starts on the cycle. Only for added cycles.
+     */
+    public double quality() {
+        assert !Double.isNaN(cycleDistance);
+        return cycleDistance / (distanceToCycle * 2 + cycleDistance);
+    }
+
+    /**
+     * Fingerprint of a cycle found by dfs: the closing edge, straight line length by 1km and super vertices.
+     * Cycles of the same dfs with the same fingerprint differ a bit in a middle and get the same result of checks.
+     * Must be called before tryAddCycle, it changes vertices.
+     */
+    long fingerprint() {
+        assertFirstAndEndCycle();
+        final long from = vertices.get(1).getIdentificator();
+        final long to = vertices.get(0).getIdentificator();
+        long superVertexes = 0;
+        for (int i = 1; i < vertices.size(); i++) {
+            final Vertex v = vertices.get(i);
+            if (v.isSuperVertex()) {
+                // the same set of super vertices in any order
+                superVertexes += v.getIdentificator() * 0x9E3779B97F4A7C15L;
+            }
+        }
+        long h = Math.min(from, to) * 31 + Math.max(from, to);
+        h = h * 31 + (long) getCycleDistance(vertices);
+        h = h * 31 + superVertexes;
+        return h;
     }
 
     private boolean tooLongSuperVertexesDistance(double cycleDistance) {
@@ -192,7 +252,11 @@ public class Cycle {
         return inCity;
     }
 
-    private boolean replaceSuperVertexesInPath(Graph fullGraph) {
+    private boolean replaceSuperVertexesInPath(Graph fullGraph, @Nullable EdgeExpansions expansions,
+                                               SearchWorkspace searchWorkspace) {
+        if (expansions != null && canBeExpanded(expansions)) {
+            return expandSuperVertexes(fullGraph, expansions);
+        }
         assert size() > 3;
         boolean progress = true;
         assertFirstAndEndCycle();
@@ -217,9 +281,9 @@ public class Cycle {
                     var v = vertices.get(startIndex);
                     var u = vertices.get(finishIndex);
 
-                    final DijkstraAlgorithm alg = new DijkstraAlgorithm(fullGraph, v);
-                    alg.run(u);
-                    List<Vertex> vToUPath = alg.getRouteFromFullGraph(u);
+                    final DijkstraAlgorithm alg = new DijkstraAlgorithm(fullGraph, v, searchWorkspace);
+                    alg.run(u, SearchMode.fastest(fullGraph));
+                    final PathView vToUPath = alg.getPath(u);
                     // TODO: remove it - not possible if we have connected graph
                     if (vToUPath.size() == 1) { // didn't find a route between v & u
                         return false;
@@ -227,7 +291,7 @@ public class Cycle {
                     assert vToUPath.size() >= 2;
 
                     final double oldDistance = v.getDistance(u);
-                    final double newDistanceOfPath = getCycleDistance(vToUPath);
+                    final double newDistanceOfPath = vToUPath.distanceKM();
                     // distance increased significantly, probably with superNode we went over river/big road
                     // where we can't really ride. Can we do it better here?
                     // TODO: compare it with full distance? if it's small percent - maybe it's okay?
@@ -236,18 +300,14 @@ public class Cycle {
                     }
 
 
-                    assert v.getIdentificator() == vToUPath.get(0).getIdentificator();
-                    assert u.getIdentificator() == vToUPath.get(vToUPath.size() - 1).getIdentificator();
-                    for (Vertex vertex : vToUPath) {
-                        assert !vertex.isSuperVertex();
-                    }
-
-                    for (Vertex vertex : vToUPath) {
-                        assert !vertex.isSuperVertex();
+                    assert v.getIdentificator() == vToUPath.first().getIdentificator();
+                    assert u.getIdentificator() == vToUPath.last().getIdentificator();
+                    for (int k = 0; k < vToUPath.size(); k++) {
+                        assert !vToUPath.vertex(k).isSuperVertex();
                     }
-                    assert !hasDuplicateVertexes(vToUPath);
+                    assert !hasDuplicateVertexes(vToUPath.toList());
                     vertices.subList(startIndex, finishIndex).clear();
-                    vertices.addAll(startIndex, vToUPath);
+                    vToUPath.addTo(vertices, startIndex);
                      /*
                       It's possible to have duplicate vertex here, but it should be fixed by removeExternalCycles
                      */
@@ -265,6 +325,54 @@ public class Cycle {
         return true;
     }
 
+    private boolean canBeExpanded(EdgeExpansions expansions) {
+        for (int i = 1; i < vertices.size(); i++) {
+            final Vertex v = vertices.get(i - 1);
+            final Vertex u = vertices.get(i);
+            if ((v.isSuperVertex() || u.isSuperVertex()) && !expansions.contains(v, u)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces edges of super vertices by their paths in the full graph.
+     * Every part of the cycle through super vertices is checked as in the search version.
+     */
+    private boolean expandSuperVertexes(Graph fullGraph, EdgeExpansions expansions) {
+        assertFirstAndEndCycle();
+        assert !vertices.get(0).isSuperVertex() && !vertices.get(vertices.size() - 1).isSuperVertex();
+        List<Vertex> expanded = new ArrayList<>(vertices.size() * 2);
+        expanded.add(vertices.get(0));
+        int lastNormal = 0;
+        double superPartDistance = 0;
+        for (int i = 1; i < vertices.size(); i++) {
+            final Vertex v = vertices.get(i - 1);
+            final Vertex u = vertices.get(i);
+            if (!v.isSuperVertex() && !u.isSuperVertex()) {
+                expanded.add(u);
+                lastNormal = i;
+                continue;
+            }
+            expansions.appendPath(v, u, expanded, fullGraph);
+            superPartDistance += expansions.length(v, u);
+            if (!u.isSuperVertex()) {
+                // distance increased significantly, probably with superNode we went over river/big road
+                final Vertex partStart = vertices.get(lastNormal);
+                if (partStart.getDistance(u) * 5 < superPartDistance) {
+                    return false;
+                }
+                lastNormal = i;
+                superPartDistance = 0;
+            }
+        }
+        vertices.clear();
+        vertices.addAll(expanded);
+        // It's possible to have duplicate vertex here, but it should be fixed by removeExternalCycles
+        return true;
+    }
+
     private void assertFirstAndEndCycle() {
         assert vertices.get(0).getIdentificator() == vertices.get(vertices.size() - 1).getIdentificator();
     }
@@ -344,16 +452,17 @@ public class Cycle {
         return false;
     }
 
+    // POSITIVE_INFINITY if the whole cycle is farther than max distance of dijkstra
     private double minDistanceToCycle(Vertex startVertex, DijkstraAlgorithm dijkstra) {
         dijkstra.assertStartVertex(startVertex);
-        double minDistance = Double.MAX_VALUE;
+        double minDistance = Double.POSITIVE_INFINITY;
         for (Vertex v : vertices) {
             final double distanceToV = dijkstra.getDistance(v);
             if (distanceToV < minDistance) {
                 minDistance = distanceToV;
             }
         }
-        assert minDistance != Double.MAX_VALUE;
+        assert minDistance != Double.POSITIVE_INFINITY || dijkstra.getMaxDistance() != Double.POSITIVE_INFINITY;
         return minDistance;
     }
 
@@ -452,7 +561,7 @@ public class Cycle {
         }
     }
 
-    public void removeExternalGoToAnotherRoadAndComeBack(Graph fullGraph) {
+    public void removeExternalGoToAnotherRoadAndComeBack(Graph fullGraph, SearchWorkspace searchWorkspace) {
         int startIndex = (int) (((double) vertices.size()) / 100 * 5);
         int finishIndex = (int) (((double) vertices.size()) / 100 * 95);
 
@@ -486,11 +595,11 @@ public class Cycle {
                             int oldSize = subList.size();
                             subList.clear();
 
-                            final DijkstraAlgorithm alg = new DijkstraAlgorithm(fullGraph, v);
-                            alg.run(u);
-                            List<Vertex> vToNeighborPath = alg.getRouteFromFullGraph(u);
-                            assert !hasDuplicateVertexes(vToNeighborPath);
-                            subList.addAll(vToNeighborPath);
+                            final DijkstraAlgorithm alg = new DijkstraAlgorithm(fullGraph, v, searchWorkspace);
+                            alg.run(u, SearchMode.fastest(fullGraph));
+                            final PathView vToNeighborPath = alg.getPath(u);
+                            assert !hasDuplicateVertexes(vToNeighborPath.toList());
+                            vToNeighborPath.addTo(subList);
 
 //                            assert !hasDuplicateVertexes(); TODO: should be here?
 
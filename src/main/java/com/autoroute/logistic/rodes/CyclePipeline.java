@@ -0,0 +1,253 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.SearchWorkspace;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Cycles search in the compact graph split into 2 stages: dfs producers only find candidate cycles and put them
+ * into a bounded queue, evaluators replace super vertices, remove external cycles and check duplicates.
+ * A full queue blocks producers, so the dfs doesn't run far ahead of evaluation.
+ * Every dfs run starts with a new seed, so the set of runs doesn't depend on the number of producers.
+ * The search is cancelled by any of {@link CycleSearchLimits}; candidates left in the queue are dropped then.
+ * Good cycles are given to the listener as soon as they are found and are kept sorted by {@link Cycle#quality()},
+ * so the best cycles are available at any moment.
+ * Every task of the search has its own workspaces, they are dropped when the task is over.
+ */
+public final class CyclePipeline {
+
+    private static final Logger LOGGER = LogManager.getLogger(CyclePipeline.class);
+    private static final int POLL_MS = 50;
+
+    private final Graph compactGraph;
+    private final Vertex startVertex;
+    private final DijkstraAlgorithm dijkstra;
+    private final CycleSearchLimits limits;
+    private final Consumer<Cycle> listener;
+
+    // all found cycles for checks of duplicates
+    private final List<Cycle> result = Collections.synchronizedList(new ArrayList<>());
+    // the same cycles, the best first
+    private final List<Cycle> best = new ArrayList<>();
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicInteger activeProducers = new AtomicInteger();
+    private final AtomicInteger tries = new AtomicInteger();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong lastTimeFoundNewRouteTimestamp = new AtomicLong();
+    private long deadline = Long.MAX_VALUE;
+    private long seed = 0;
+    private final LongAdder produced = new LongAdder();
+    private final LongAdder evaluated = new LongAdder();
+    private BlockingQueue<Cycle> candidates;
+
+    /**
+     * @param listener is called by threads of the search for every good cycle, must be thread safe.
+     */
+    public CyclePipeline(Graph compactGraph, Vertex startVertex, DijkstraAlgorithm dijkstra,
+                         CycleSearchLimits limits, Consumer<Cycle> listener) {
+        assert !compactGraph.isFullGraph();
+        this.compactGraph = compactGraph;
+        this.startVertex = startVertex;
+        this.dijkstra = dijkstra;
+        this.limits = limits;
+        this.listener = listener;
+    }
+
+    /**
+     * Runs the dfs and checks of cycles in the current thread.
+     *
+     * @return found cycles in the full graph, the best first.
+     */
+    public List<Cycle> runSerial(long seed) {
+        start(seed);
+        final DfsWorkspace dfsWorkspace = new DfsWorkspace(compactGraph.size());
+        final SearchWorkspace searchWorkspace = new SearchWorkspace(compactGraph.getFullGraph());
+        while (!cancelled.get()) {
+            final boolean finished = compactGraph.findCandidateCycles(startVertex, nextRandom(), dijkstra, cycle -> {
+                evaluate(cycle, searchWorkspace);
+                return keepGoing();
+            }, this::keepGoing, dfsWorkspace);
+            if (finished) {
+                finishRun();
+            }
+        }
+        LOGGER.info("cycles search: runs: {}, found: {}", runs.get(), result.size());
+        return getBest();
+    }
+
+    /**
+     * Runs producers + evaluators tasks in the pool and waits for them, the pool must have enough threads for all.
+     *
+     * @return found cycles in the full graph, the best first.
+     */
+    public List<Cycle> run(ExecutorService pool, int producers, int evaluators, int queueCapacity, long seed) {
+        assert producers > 0 && evaluators > 0 && queueCapacity > 0;
+        candidates = new ArrayBlockingQueue<>(queueCapacity);
+        start(seed);
+        activeProducers.set(producers);
+
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            tasks.add(pool.submit(this::produce));
+        }
+        for (int i = 0; i < evaluators; i++) {
+            tasks.add(pool.submit(this::evaluateCandidates));
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException | ExecutionException e) {
+                LOGGER.warn("exception in cycles pipeline", e);
+                cancelled.set(true);
+            }
+        }
+        LOGGER.info("cycles pipeline: runs: {}, produced: {}, evaluated: {}, dropped: {}, found: {}",
+            runs.get(), produced.sum(), evaluated.sum(), candidates.size(), result.size());
+        candidates.clear();
+        return getBest();
+    }
+
+    /**
+     * @return found cycles so far, the best first.
+     */
+    public List<Cycle> getBest() {
+        synchronized (best) {
+            return new ArrayList<>(best);
+        }
+    }
+
+    private void start(long seed) {
+        this.seed = seed;
+        final long now = System.currentTimeMillis();
+        deadline = now + limits.budgetMs();
+        lastTimeFoundNewRouteTimestamp.set(now);
+    }
+
+    private Random nextRandom() {
+        return new Random(seed + runs.getAndIncrement());
+    }
+
+    // the dfs run is over without cancel
+    private void finishRun() {
+        final int t = tries.incrementAndGet();
+        if (t % 1000 == 0) {
+            LOGGER.info("build cycles tries: {}", t);
+        }
+        // TODO: should depends on the distance. gives more tries for longer routes
+        if (t >= limits.maxTries()) {
+            cancelled.set(true);
+            return;
+        }
+        checkTime();
+    }
+
+    private void produce() {
+        final DfsWorkspace workspace = new DfsWorkspace(compactGraph.size());
+        try {
+            while (!cancelled.get()) {
+                if (!compactGraph.findCandidateCycles(startVertex, nextRandom(), dijkstra, this::offer, this::keepGoing,
+                    workspace)) {
+                    return;
+                }
+                finishRun();
+            }
+        } finally {
+            activeProducers.decrementAndGet();
+        }
+    }
+
+    private boolean offer(Cycle cycle) {
+        try {
+            while (!cancelled.get()) {
+                if (candidates.offer(cycle, POLL_MS, TimeUnit.MILLISECONDS)) {
+                    produced.increment();
+                    return true;
+                }
+                checkTime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled.set(true);
+        }
+        return false;
+    }
+
+    private void evaluateCandidates() {
+        final SearchWorkspace workspace = new SearchWorkspace(compactGraph.getFullGraph());
+        try {
+            while (!cancelled.get()) {
+                final Cycle cycle = candidates.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (cycle == null) {
+                    if (activeProducers.get() == 0 && candidates.isEmpty()) {
+                        return;
+                    }
+                    // producers can be in a long dfs without candidates
+                    checkTime();
+                    continue;
+                }
+                evaluate(cycle, workspace);
+                checkTime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled.set(true);
+        }
+    }
+
+    private void evaluate(Cycle cycle, SearchWorkspace workspace) {
+        final Cycle fullCycle = compactGraph.evaluateCycle(cycle, startVertex, result, dijkstra, workspace);
+        evaluated.increment();
+        if (fullCycle == null) {
+            return;
+        }
+        tries.set(0);
+        lastTimeFoundNewRouteTimestamp.set(System.currentTimeMillis());
+        final boolean enough;
+        synchronized (best) {
+            int i = best.size();
+            while (i > 0 && best.get(i - 1).quality() < fullCycle.quality()) {
+                i--;
+            }
+            best.add(i, fullCycle);
+            enough = best.size() >= limits.maxCycles();
+        }
+        listener.accept(fullCycle);
+        if (enough) {
+            cancelled.set(true);
+        }
+    }
+
+    // a dfs run is checked between candidates too
+    private boolean keepGoing() {
+        checkTime();
+        return !cancelled.get();
+    }
+
+    private void checkTime() {
+        final long now = System.currentTimeMillis();
+        if (now > deadline && cancelled.compareAndSet(false, true)) {
+            LOGGER.info("time budget: {} seconds is over", limits.budgetMs() / 1000);
+        }
+        if (now - lastTimeFoundNewRouteTimestamp.get() > limits.maxFindingTimeMs()
+            && cancelled.compareAndSet(false, true)) {
+            LOGGER.info("couldn't find a new route for more then: {} seconds", limits.maxFindingTimeMs() / 1000);
+        }
+    }
+}
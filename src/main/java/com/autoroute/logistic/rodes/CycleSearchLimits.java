@@ -0,0 +1,14 @@
+package com.autoroute.logistic.rodes;
+
+/**
+ * @param maxCycles        the search stops when there are so many good cycles.
+ * @param maxTries         the search stops after so many dfs runs without a new cycle.
+ * @param maxFindingTimeMs the search stops if there was no new cycle for this time.
+ * @param budgetMs         the search stops after this time in any case.
+ */
+public record CycleSearchLimits(int maxCycles, int maxTries, long maxFindingTimeMs, long budgetMs) {
+
+    public CycleSearchLimits {
+        assert maxCycles > 0 && maxTries > 0 && maxFindingTimeMs > 0 && budgetMs > 0;
+    }
+}
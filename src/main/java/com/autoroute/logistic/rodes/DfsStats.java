@@ -0,0 +1,45 @@
+package com.autoroute.logistic.rodes;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of dfs runs over the compact graph, shared by all threads.
+ */
+public class DfsStats {
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder expanded = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+    private final LongAdder tooLong = new LongAdder();
+
+    void addRun(long expandedVertices, long prunedVertices, long tooLongCycles) {
+        runs.increment();
+        expanded.add(expandedVertices);
+        pruned.add(prunedVertices);
+        tooLong.add(tooLongCycles);
+    }
+
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    public long getExpanded() {
+        return expanded.sum();
+    }
+
+    public long getPruned() {
+        return pruned.sum();
+    }
+
+    /**
+     * @return cycles which were skipped by the dfs, because their roads are longer than the longest route.
+     */
+    public long getTooLong() {
+        return tooLong.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "runs: " + getRuns() + ", expanded: " + getExpanded() + ", pruned: " + getPruned() + ", too long: " + getTooLong();
+    }
+}
@@ -0,0 +1,92 @@
+package com.autoroute.logistic.rodes;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Visited flags, parents, lengths from the start, reachability marks and the order of neighbours of one dfs by compact graph ids,
+ * so the dfs doesn't write anything into the graph. Arrays are reset by incrementing epoch:
+ * a value is valid only if its stamp equals to the current epoch.
+ * Every thread of a search has its own workspace which is dropped with the search.
+ */
+final class DfsWorkspace {
+
+    static final byte UNKNOWN = 0;
+    static final byte REACHABLE = 1;
+    static final byte TOO_FAR = 2;
+
+    private final Vertex[] prev;
+    // length of roads from the start by the dfs tree, it's set together with prev
+    private final double[] lengths;
+    private final int[] visitedStamps;
+    private final int[] reachableStamps;
+    private final byte[] reachable;
+    private Vertex[] order = new Vertex[8];
+    private int epoch = 0;
+
+    DfsWorkspace(int size) {
+        this.prev = new Vertex[size];
+        this.lengths = new double[size];
+        this.visitedStamps = new int[size];
+        this.reachableStamps = new int[size];
+        this.reachable = new byte[size];
+    }
+
+    void reset(Vertex start) {
+        epoch++;
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(visitedStamps, 0);
+            Arrays.fill(reachableStamps, 0);
+            epoch = 1;
+        }
+        prev[start.getId()] = null;
+        lengths[start.getId()] = 0;
+    }
+
+    boolean isVisited(int v) {
+        return visitedStamps[v] == epoch;
+    }
+
+    void setVisited(int v) {
+        visitedStamps[v] = epoch;
+    }
+
+    Vertex[] prev() {
+        return prev;
+    }
+
+    double[] lengths() {
+        return lengths;
+    }
+
+    byte reachable(int v) {
+        return reachableStamps[v] == epoch ? reachable[v] : UNKNOWN;
+    }
+
+    void setReachable(int v, byte value) {
+        reachableStamps[v] = epoch;
+        reachable[v] = value;
+    }
+
+    /**
+     * Shuffles neighbours the same way as {@link java.util.Collections#shuffle(List, Random)},
+     * the array is valid until the next call.
+     */
+    Vertex[] shuffledNeighbors(List<Vertex> neighbors, Random random) {
+        final int size = neighbors.size();
+        if (order.length < size) {
+            order = new Vertex[Math.max(size, order.length * 2)];
+        }
+        for (int i = 0; i < size; i++) {
+            order[i] = neighbors.get(i);
+        }
+        for (int i = size; i > 1; i--) {
+            final int j = random.nextInt(i);
+            final Vertex tmp = order[i - 1];
+            order[i - 1] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+}
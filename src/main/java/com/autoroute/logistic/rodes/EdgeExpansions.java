@@ -0,0 +1,149 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.PathView;
+import com.autoroute.logistic.rodes.dijkstra.SearchMode;
+import com.autoroute.logistic.rodes.dijkstra.SearchWorkspace;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Paths in the full graph for edges of the compact graph which touch super vertices, such an edge stands for
+ * a road through vertices merged into the super vertex. Other edges are edges of the full graph.
+ * Edges are keyed by ids of the compact graph, so expansions must be rebuilt after ids are updated.
+ */
+final class EdgeExpansions {
+
+    private static final Logger LOGGER = LogManager.getLogger(EdgeExpansions.class);
+
+    private final Long2ObjectOpenHashMap<Expansion> expansions;
+
+    private EdgeExpansions(Long2ObjectOpenHashMap<Expansion> expansions) {
+        this.expansions = expansions;
+    }
+
+    /**
+     * Edges are searched by tasks in the pool of the request, every task has its own search workspace.
+     */
+    static EdgeExpansions build(Graph compactGraph, Graph fullGraph, Executor pool, int tasks) {
+        assert tasks > 0;
+        final long startTime = System.currentTimeMillis();
+        List<Vertex[]> edges = new ArrayList<>();
+        for (Vertex v : compactGraph.getVertices()) {
+            for (Vertex u : v.getNeighbors()) {
+                if (v.getId() < u.getId() && (v.isSuperVertex() || u.isSuperVertex())) {
+                    edges.add(new Vertex[]{v, u});
+                }
+            }
+        }
+        final Expansion[] result = new Expansion[edges.size()];
+        final AtomicInteger nextEdge = new AtomicInteger();
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[Math.min(tasks, Math.max(1, edges.size()))];
+        for (int t = 0; t < futures.length; t++) {
+            futures[t] = CompletableFuture.runAsync(() -> {
+                final SearchWorkspace workspace = new SearchWorkspace(fullGraph);
+                for (int i = nextEdge.getAndIncrement(); i < edges.size(); i = nextEdge.getAndIncrement()) {
+                    result[i] = expand(edges.get(i)[0], edges.get(i)[1], fullGraph, workspace);
+                }
+            }, pool);
+        }
+        CompletableFuture.allOf(futures).join();
+
+        Long2ObjectOpenHashMap<Expansion> expansions = new Long2ObjectOpenHashMap<>(edges.size());
+        for (int i = 0; i < edges.size(); i++) {
+            expansions.put(key(edges.get(i)[0], edges.get(i)[1]), result[i]);
+        }
+        LOGGER.info("expanded: {} edges of super vertices for: {}ms", edges.size(), System.currentTimeMillis() - startTime);
+        return new EdgeExpansions(expansions);
+    }
+
+    private static Expansion expand(Vertex v, Vertex u, Graph fullGraph, SearchWorkspace workspace) {
+        final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(fullGraph, v, workspace);
+        dijkstra.run(u, SearchMode.fastest(fullGraph));
+        final PathView path = dijkstra.getPath(u);
+        assert path.first().getIdentificator() == v.getIdentificator();
+        assert path.last().getIdentificator() == u.getIdentificator();
+        final int[] ids = new int[path.size()];
+        for (int j = 0; j < ids.length; j++) {
+            ids[j] = path.id(j);
+        }
+        return new Expansion(v.getIdentificator(), u.getIdentificator(), ids, path.distanceKM());
+    }
+
+    private static long key(Vertex v, Vertex u) {
+        final int min = Math.min(v.getId(), u.getId());
+        final int max = Math.max(v.getId(), u.getId());
+        return ((long) min << 32) | max;
+    }
+
+    // vertices of the full graph can have the same ids, so identificators are checked too
+    @Nullable
+    private Expansion find(Vertex v, Vertex u) {
+        final Expansion expansion = expansions.get(key(v, u));
+        if (expansion == null) {
+            return null;
+        }
+        final boolean matches = v.getId() < u.getId()
+            ? expansion.from == v.getIdentificator() && expansion.to == u.getIdentificator()
+            : expansion.from == u.getIdentificator() && expansion.to == v.getIdentificator();
+        return matches ? expansion : null;
+    }
+
+    boolean contains(Vertex v, Vertex u) {
+        return find(v, u) != null;
+    }
+
+    /**
+     * @return length of the road of the edge v-u.
+     */
+    double length(Vertex v, Vertex u) {
+        final Expansion expansion = find(v, u);
+        return expansion != null ? expansion.length : LatLon.distanceKM(v.getLatLon(), u.getLatLon());
+    }
+
+    /**
+     * @return length of the road of the path of the compact graph.
+     */
+    double length(List<Vertex> path) {
+        double length = 0;
+        for (int i = 1; i < path.size(); i++) {
+            length += length(path.get(i - 1), path.get(i));
+        }
+        return length;
+    }
+
+    /**
+     * Adds vertices of the full graph of the edge v-u excluding v.
+     */
+    void appendPath(Vertex v, Vertex u, List<Vertex> out, Graph fullGraph) {
+        final Expansion expansion = find(v, u);
+        assert expansion != null;
+        final int[] ids = expansion.fullIds;
+        if (v.getId() < u.getId()) {
+            for (int i = 1; i < ids.length; i++) {
+                out.add(fullGraph.getVertexById(ids[i]));
+            }
+        } else {
+            for (int i = ids.length - 2; i >= 0; i--) {
+                out.add(fullGraph.getVertexById(ids[i]));
+            }
+        }
+    }
+
+    int size() {
+        return expansions.size();
+    }
+
+    // ids of the full graph from the vertex with smaller id in the compact graph
+    private record Expansion(long from, long to, int[] fullIds, double length) {
+    }
+}
@@ -0,0 +1,209 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Removes edge v-u if u is still reachable from v in less than {@link #DEPTH_LIMIT} hops without it,
+ * the longest edges of every vertex are tried first.
+ * Every check is a BFS bounded by depth over epoch-stamped arrays, they are reused by tasks of one run
+ * and are dropped after it, so threads of the common pool don't keep them.
+ * Vertices are grouped by tiles: a vertex which is at least DEPTH_LIMIT hops away from other tiles
+ * touches only its tile, so such vertices are processed in parallel by tiles, the rest - sequentially after.
+ */
+class EdgeSparsifier {
+
+    private static final Logger LOGGER = LogManager.getLogger(EdgeSparsifier.class);
+
+    static final int DEPTH_LIMIT = 5;
+    private static final double TILE_KM = 5;
+    private static final double KM_IN_DEGREE = 6371 * Math.PI / 180;
+
+    private final List<Vertex> vertices;
+    private final long identificatorStartVertex;
+
+    EdgeSparsifier(List<Vertex> vertices, long identificatorStartVertex) {
+        this.vertices = vertices;
+        this.identificatorStartVertex = identificatorStartVertex;
+    }
+
+    /**
+     * @return number of removed edges.
+     */
+    int run() {
+        final long startTime = System.currentTimeMillis();
+        final int n = vertices.size();
+        final long[] tiles = new long[n];
+        final double tileLat = TILE_KM / KM_IN_DEGREE;
+        final double tileLon = tileLat / Math.max(0.01, Math.cos(Math.toRadians(vertices.get(0).getLatLon().lat())));
+        for (int i = 0; i < n; i++) {
+            final Vertex v = vertices.get(i);
+            assert v.getId() == i;
+            final long row = (long) Math.floor(v.getLatLon().lat() / tileLat);
+            final long col = (long) Math.floor(v.getLatLon().lon() / tileLon);
+            tiles[i] = (row << 32) | (col & 0xffffffffL);
+        }
+        final int[] hopsToOtherTile = hopsToOtherTile(tiles);
+
+        Long2ObjectOpenHashMap<IntArrayList> interior = new Long2ObjectOpenHashMap<>();
+        IntArrayList boundary = new IntArrayList();
+        for (int i = 0; i < n; i++) {
+            if (hopsToOtherTile[i] >= DEPTH_LIMIT) {
+                IntArrayList ids = interior.get(tiles[i]);
+                if (ids == null) {
+                    ids = new IntArrayList();
+                    interior.put(tiles[i], ids);
+                }
+                ids.add(i);
+            } else {
+                boundary.add(i);
+            }
+        }
+
+        AtomicInteger removedEdges = new AtomicInteger();
+        // a task of a tile takes a free workspace and gives it back, so there are not more of them than threads
+        final Queue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+        interior.values().parallelStream().forEach(ids -> {
+            final Workspace workspace = takeWorkspace(workspaces);
+            int removed = 0;
+            for (int i = 0; i < ids.size(); i++) {
+                removed += sparsify(vertices.get(ids.getInt(i)), workspace);
+            }
+            removedEdges.addAndGet(removed);
+            workspaces.add(workspace);
+        });
+        final Workspace workspace = takeWorkspace(workspaces);
+        for (int i = 0; i < boundary.size(); i++) {
+            removedEdges.addAndGet(sparsify(vertices.get(boundary.getInt(i)), workspace));
+        }
+
+        LOGGER.info("removed: {} edges, tiles: {}, interior vertices: {}, boundary vertices: {}, took: {}ms",
+            removedEdges.get(), interior.size(), n - boundary.size(), boundary.size(),
+            System.currentTimeMillis() - startTime);
+        return removedEdges.get();
+    }
+
+    private Workspace takeWorkspace(Queue<Workspace> workspaces) {
+        final Workspace workspace = workspaces.poll();
+        return workspace != null ? workspace : new Workspace(vertices.size());
+    }
+
+    private int sparsify(Vertex v, Workspace workspace) {
+        if (v.getNeighbors().size() < 3 || v.getIdentificator() == identificatorStartVertex) {
+            return 0;
+        }
+        Vertex[] neighbors = v.getNeighbors().toArray(new Vertex[0]);
+        Arrays.sort(neighbors, (x, y) -> {
+            var d1 = LatLon.fastDistance(v.getLatLon(), x.getLatLon());
+            var d2 = LatLon.fastDistance(v.getLatLon(), y.getLatLon());
+            return Double.compare(d2, d1);
+        });
+
+        int removedEdges = 0;
+        for (Vertex u : neighbors) {
+            if (u.getNeighbors().size() < 3 || u.getIdentificator() == identificatorStartVertex) {
+                continue;
+            }
+            v.removeNeighbor(u);
+            u.removeNeighbor(v);
+            if (workspace.isReachable(v, u, DEPTH_LIMIT - 1)) {
+                removedEdges++;
+            } else {
+                v.addNeighbor(u);
+                u.addNeighbor(v);
+            }
+        }
+        return removedEdges;
+    }
+
+    /**
+     * @return for every vertex - number of hops to the closest vertex with an edge to another tile,
+     * but not more than DEPTH_LIMIT.
+     */
+    private int[] hopsToOtherTile(long[] tiles) {
+        final int n = vertices.size();
+        int[] hops = new int[n];
+        Arrays.fill(hops, DEPTH_LIMIT);
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            for (Vertex u : vertices.get(i).getNeighbors()) {
+                if (tiles[u.getId()] != tiles[i]) {
+                    hops[i] = 0;
+                    queue[tail++] = i;
+                    break;
+                }
+            }
+        }
+        int head = 0;
+        while (head < tail) {
+            final int v = queue[head++];
+            if (hops[v] + 1 >= DEPTH_LIMIT) {
+                continue;
+            }
+            for (Vertex u : vertices.get(v).getNeighbors()) {
+                if (hops[u.getId()] > hops[v] + 1) {
+                    hops[u.getId()] = hops[v] + 1;
+                    queue[tail++] = u.getId();
+                }
+            }
+        }
+        return hops;
+    }
+
+    private final class Workspace {
+
+        private final int[] stamps;
+        private final int[] depths;
+        private final int[] queue;
+        private int epoch = 0;
+
+        Workspace(int size) {
+            this.stamps = new int[size];
+            this.depths = new int[size];
+            this.queue = new int[size];
+        }
+
+        boolean isReachable(Vertex from, Vertex to, int maxDepth) {
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                epoch = 1;
+            }
+            stamps[from.getId()] = epoch;
+            depths[from.getId()] = 0;
+            queue[0] = from.getId();
+            int head = 0;
+            int tail = 1;
+            while (head < tail) {
+                final int v = queue[head++];
+                if (depths[v] == maxDepth) {
+                    return false;
+                }
+                final List<Vertex> neighbors = vertices.get(v).getNeighbors();
+                for (int i = 0; i < neighbors.size(); i++) {
+                    final Vertex u = neighbors.get(i);
+                    final int id = u.getId();
+                    if (stamps[id] != epoch) {
+                        if (u == to) {
+                            return true;
+                        }
+                        stamps[id] = epoch;
+                        depths[id] = depths[v] + 1;
+                        queue[tail++] = id;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,18 +1,28 @@
 package com.autoroute.logistic.rodes;
 
-import com.autoroute.logistic.LogisticUtils;
+import com.autoroute.logistic.SpatialIndex;
+import com.autoroute.logistic.rodes.dijkstra.ContractionHierarchy;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraCache;
 import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraStats;
+import com.autoroute.logistic.rodes.dijkstra.Landmarks;
+import com.autoroute.logistic.rodes.dijkstra.SearchWorkspace;
 import com.autoroute.logistic.LatLon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 public class Graph {
 
     private static final Logger LOGGER = LogManager.getLogger(Graph.class);
+    static final int DFS_CHECK_EXPANSIONS = 1024;
 
     private List<Vertex> vertices;
     Long2ObjectOpenHashMap<Vertex> identificatorToVertex = null;
@@ -20,6 +30,21 @@ public class Graph {
     private final int minKM;
     private final Random random = new Random(42);
     private Graph fullGraph = null;
+    private CsrGraph csrGraph = null;
+    @Nullable
+    private ContractionHierarchy contractionHierarchy = null;
+    @Nullable
+    private Landmarks landmarks = null;
+    private final DijkstraStats dijkstraStats = new DijkstraStats();
+    @Nullable
+    private DijkstraCache dijkstraCache = null; // full graph only
+    private SpatialIndex spatialIndex = null; // built lazily, dropped on every change of vertices
+    @Nullable
+    private EdgeExpansions edgeExpansions = null; // compact graph only, dropped on every change of vertices
+    private final RejectedCycleCache rejectedCycles = new RejectedCycleCache(); // compact graph only
+    private final DfsStats dfsStats = new DfsStats();
+    // a frozen full graph is only read, so it's shared by searches and requests
+    private boolean frozen = false;
 
     public Graph(List<Vertex> vertices, int minKM, int maxKM) {
         assert !vertices.isEmpty();
@@ -44,20 +69,19 @@ public class Graph {
     }
 
     public void addEdgesFromStartPoint(Vertex startVertex, double minDistance) {
-        for (Vertex v : vertices) {
+        assert !frozen;
+        for (Vertex v : findVerticesInRadius(startVertex.getLatLon(), minDistance)) {
             if (v.getIdentificator() == startVertex.getIdentificator()) {
                 continue;
             }
-            final double d = LatLon.distanceKM(startVertex.getLatLon(), v.getLatLon());
-            if (d < minDistance) {
-                v.addNeighbor(startVertex);
-                startVertex.addNeighbor(v);
-                checkGraph(startVertex.getIdentificator());
-            }
+            v.addNeighbor(startVertex);
+            startVertex.addNeighbor(v);
+            checkGraph(startVertex.getIdentificator());
         }
     }
 
     public void removeNotVisitedVertexes(Vertex start) {
+        assert !frozen;
         boolean[] visit = new boolean[vertices.size()];
         bfsVisit(start, visit);
         List<Vertex> newVertices = new ArrayList<>();
@@ -99,6 +123,7 @@ public class Graph {
     }
 
     public void calculateDistanceForNeighbours() {
+        assert !frozen;
         for (Vertex v : vertices) {
             v.calculateDistance();
         }
@@ -106,47 +131,153 @@ public class Graph {
 
     // TODO: move it out from Graph to some CycleAlgorithm which works with the graph.
     public void findAllCycles(Vertex startVertex, List<Cycle> result, DijkstraAlgorithm dijkstra) {
-        Vertex[] prev = new Vertex[vertices.size()];
-        Arrays.fill(prev, null);
-        boolean[] visited = new boolean[vertices.size()];
-        Arrays.fill(visited, false);
-        visited[startVertex.getId()] = true;
+        findAllCycles(startVertex, result, dijkstra, random);
+    }
+
+    /**
+     * Doesn't change the graph, so several threads can search with their own random over one graph
+     * if result is a synchronized list.
+     */
+    public void findAllCycles(Vertex startVertex, List<Cycle> result, DijkstraAlgorithm dijkstra, Random random) {
+        final SearchWorkspace searchWorkspace = new SearchWorkspace(fullGraph);
+        findCandidateCycles(startVertex, random, dijkstra, cycle -> {
+            evaluateCycle(cycle, startVertex, result, dijkstra, searchWorkspace);
+            return true;
+        });
+    }
+
+    /**
+     * The same dfs as findAllCycles, but cycles are given to the consumer without any checks.
+     * A route through a vertex goes to it and back, so vertices with 2 * distance from the start more than
+     * the longest route are not visited by the dfs (if the start dijkstra is given).
+     * The dfs keeps lengths of roads by the tree (by {@link EdgeExpansions} if they are built), so a cycle
+     * which is longer than the longest route isn't given to the consumer.
+     *
+     * @return false if the consumer returned false and the dfs was stopped.
+     */
+    public boolean findCandidateCycles(Vertex startVertex, Random random, @Nullable DijkstraAlgorithm dijkstra,
+                                       Predicate<Cycle> consumer) {
+        return findCandidateCycles(startVertex, random, dijkstra, consumer, () -> true);
+    }
+
+    /**
+     * @param keepGoing is checked every {@link #DFS_CHECK_EXPANSIONS} expanded vertices, so a long dfs
+     *                  without cycles for the consumer can be stopped too.
+     * @return false if the consumer or keepGoing returned false and the dfs was stopped.
+     */
+    public boolean findCandidateCycles(Vertex startVertex, Random random, @Nullable DijkstraAlgorithm dijkstra,
+                                       Predicate<Cycle> consumer, BooleanSupplier keepGoing) {
+        return findCandidateCycles(startVertex, random, dijkstra, consumer, keepGoing, new DfsWorkspace(vertices.size()));
+    }
+
+    /**
+     * @param workspace of the current thread, runs of one thread reuse it.
+     */
+    boolean findCandidateCycles(Vertex startVertex, Random random, @Nullable DijkstraAlgorithm dijkstra,
+                                Predicate<Cycle> consumer, BooleanSupplier keepGoing, DfsWorkspace workspace) {
+        workspace.reset(startVertex);
+        final Vertex[] prev = workspace.prev();
+        final double[] lengths = workspace.lengths();
+        workspace.setVisited(startVertex.getId());
+        final double maxRouteKM = maxKM * 1.1;
+        long expanded = 0;
+        long pruned = 0;
+        long tooLong = 0;
 
         LinkedList<Vertex> stack = new LinkedList<>(); // TODO: replace to ArrayList for perf
         stack.add(startVertex);
 
-        while (!stack.isEmpty()) { // dfs without recursion
-            final Vertex v = stack.removeFirst();
-            visited[v.getId()] = true;
-
-            final List<Vertex> neighbors = v.getNeighbors();
-            Collections.shuffle(neighbors, random);
+        try {
+            while (!stack.isEmpty()) { // dfs without recursion
+                final Vertex v = stack.removeFirst();
+                workspace.setVisited(v.getId());
+                expanded++;
+                if (expanded % DFS_CHECK_EXPANSIONS == 0 && !keepGoing.getAsBoolean()) {
+                    return false;
+                }
 
-            for (int i = 0; i < neighbors.size(); i++) {
-                Vertex u = neighbors.get(i);
-                if (!visited[u.getId()]) {
-                    prev[u.getId()] = v;
-                    stack.addFirst(u);
-                } else if (prev[v.getId()].getId() != u.getId()) {
-                    tryAddNewCycle(startVertex, result, prev, v, u, dijkstra);
+                final int degree = v.getNeighbors().size();
+                final Vertex[] neighbors = workspace.shuffledNeighbors(v.getNeighbors(), random);
+
+                for (int i = 0; i < degree; i++) {
+                    Vertex u = neighbors[i];
+                    if (!workspace.isVisited(u.getId())) {
+                        if (dijkstra != null) {
+                            byte reachable = workspace.reachable(u.getId());
+                            if (reachable == DfsWorkspace.UNKNOWN) {
+                                reachable = 2 * dijkstra.getDistance(u) <= maxRouteKM
+                                    ? DfsWorkspace.REACHABLE : DfsWorkspace.TOO_FAR;
+                                workspace.setReachable(u.getId(), reachable);
+                                if (reachable == DfsWorkspace.TOO_FAR) {
+                                    pruned++;
+                                }
+                            }
+                            if (reachable == DfsWorkspace.TOO_FAR) {
+                                continue;
+                            }
+                        }
+                        prev[u.getId()] = v;
+                        lengths[u.getId()] = lengths[v.getId()] + edgeLength(v, u);
+                        stack.addFirst(u);
+                    } else if (prev[v.getId()].getId() != u.getId()) {
+                        // the cycle is the path of the tree from u to v and the edge v-u, it's checked before it's built
+                        if (lengths[v.getId()] - lengths[u.getId()] + edgeLength(v, u) > maxRouteKM) {
+                            tooLong++;
+                            continue;
+                        }
+                        var cycle = getCycle(prev, v, u);
+                        if (cycle != null && !consumer.test(cycle)) {
+                            return false;
+                        }
+                    }
                 }
             }
+            return true;
+        } finally {
+            dfsStats.addRun(expanded, pruned, tooLong);
         }
     }
 
-    private void tryAddNewCycle(Vertex startVertex, List<Cycle> result,
-                                Vertex[] prev, Vertex v, Vertex u, DijkstraAlgorithm dijkstra) {
-
-        var cycle = getCycle(prev, v, u);
-        if (cycle == null) {
-            return;
-        }
+    // length of the road, not a straight line through merged vertices of a super vertex
+    private double edgeLength(Vertex v, Vertex u) {
+        final EdgeExpansions expansions = edgeExpansions;
+        return expansions != null ? expansions.length(v, u) : LatLon.distanceKM(v.getLatLon(), u.getLatLon());
+    }
 
-        if (cycle.tryAddCycle(fullGraph, startVertex, result, dijkstra, minKM, maxKM)) {
+    public DfsStats getDfsStats() {
+        return dfsStats;
+    }
 
-        } else {
-            // TODO: get some result from tryAddCycle. if distance too big - don't go deeper in dfs?
+    /**
+     * Replaces super vertices of the cycle found in this graph and adds it to result if it's a new good route.
+     * Cycles which were already checked are rejected by {@link RejectedCycleCache}.
+     *
+     * @param searchWorkspace of the current thread for searches in the full graph.
+     * @return the cycle in the full graph which was added to result, null if the cycle was rejected.
+     */
+    @Nullable
+    public Cycle evaluateCycle(Cycle cycle, Vertex startVertex, List<Cycle> result, DijkstraAlgorithm dijkstra,
+                               SearchWorkspace searchWorkspace) {
+        final long fingerprint = cycle.fingerprint();
+        final RejectedCycleCache.Reason cached = rejectedCycles.get(fingerprint);
+        if (cached != null) {
+            rejectedCycles.countReject(cached, true);
+            return null;
+        }
+        final RejectedCycleCache.Reason reason =
+            cycle.tryAddCycle(fullGraph, edgeExpansions, startVertex, result, dijkstra, searchWorkspace, minKM, maxKM);
+        if (reason == null) {
+            rejectedCycles.put(fingerprint, RejectedCycleCache.Reason.DUPLICATE);
+            assert cycle.getFullCycle() != null;
+            return cycle.getFullCycle();
         }
+        rejectedCycles.put(fingerprint, reason);
+        rejectedCycles.countReject(reason, false);
+        return null;
+    }
+
+    public RejectedCycleCache getRejectedCycles() {
+        return rejectedCycles;
     }
 
     @Nullable
@@ -166,62 +297,29 @@ public class Graph {
     }
 
     public Vertex findNearestVertex(LatLon latLon) {
-        return LogisticUtils.findNearestVertex(latLon, vertices);
+        return getSpatialIndex().findNearest(latLon);
     }
 
-    public void removeEdges(long identificatorStartVertex) {
-        LOGGER.info("Start removeEdges");
-        int removedEdges = 0;
-        for (int i = 0; i < vertices.size(); i++) {
-            var v = vertices.get(i);
-            if (i % 5000 == 0) {
-                LOGGER.info("removeEdges: {}/{}", i, vertices.size());
-            }
-            List<Vertex> neighbors = new ArrayList<>(v.getNeighbors());
-            if (neighbors.size() < 3 || v.getIdentificator() == identificatorStartVertex) {
-                continue;
-            }
-            neighbors.sort((x, y) -> {
-                var d1 = LatLon.fastDistance(v.getLatLon(), x.getLatLon());
-                var d2 = LatLon.fastDistance(v.getLatLon(), y.getLatLon());
-                return Double.compare(d2, d1);
-            });
-
-            for (Vertex u : neighbors) {
-                if (u.getNeighbors().size() < 3 || u.getIdentificator() == identificatorStartVertex) {
-                    continue;
-                }
-                final int depthLimit = 5;
-                var distancesBeforeDelete = bfsDistance(v, depthLimit + 1);
-                assert distancesBeforeDelete.getDistance()[u.getId()] == 1;
-                assert distancesBeforeDelete.getParents()[u.getId()].equals(v);
-
-                v.removeNeighbor(u);
-                u.removeNeighbor(v);
-                removedEdges++;
-
-                var newDistancesFromV = bfsDistance(v, depthLimit);
-                var d = newDistancesFromV.getDistance()[u.getId()];
-
-                /* debug path
-                List<Vertex> path = new ArrayList<>();
-                Vertex k = u;
-                while (k != null && !k.equals(v)) {
-                    path.add(k);
-                    k = newDistancesFromV.parents[k.getId()];
-                }
-                path.add(v);
-                Collections.reverse(path);
-                */
-
+    public List<Vertex> findVerticesInRadius(LatLon latLon, double radiusKM) {
+        return getSpatialIndex().findInRadius(latLon, radiusKM);
+    }
 
-                if (d == -1 || d > depthLimit) {
-                    v.addNeighbor(u);
-                    u.addNeighbor(v);
-                    removedEdges--;
-                }
-            }
+    private SpatialIndex getSpatialIndex() {
+        SpatialIndex index = spatialIndex;
+        if (index == null) {
+            final long startTime = System.currentTimeMillis();
+            index = new SpatialIndex(vertices);
+            spatialIndex = index;
+            LOGGER.info("built spatial index for: {} vertices for: {}ms",
+                vertices.size(), System.currentTimeMillis() - startTime);
         }
+        return index;
+    }
+
+    public void removeEdges(long identificatorStartVertex) {
+        assert !frozen;
+        LOGGER.info("Start removeEdges");
+        final int removedEdges = new EdgeSparsifier(vertices, identificatorStartVertex).run();
         LOGGER.info("Finish removeEdges. Removed: " + removedEdges);
     }
 
@@ -234,54 +332,34 @@ public class Graph {
         return fullGraph == null;
     }
 
-    static class BfsResult {
-        int[] distance;
-        Vertex[] parents;
-
-        public BfsResult(int[] distance, Vertex[] parents) {
-            this.distance = distance;
-            this.parents = parents;
-        }
-
-        public int[] getDistance() {
-            return distance;
-        }
+    public Graph getFullGraph() {
+        assert !isFullGraph();
+        return fullGraph;
+    }
 
-        public Vertex[] getParents() {
-            return parents;
-        }
+    /**
+     * Finds paths in the full graph for all edges of super vertices in the current thread,
+     * needs identificators map and distances of neighbours of the full graph.
+     */
+    public void buildEdgeExpansions() {
+        buildEdgeExpansions(Runnable::run, 1);
     }
 
-    private BfsResult bfsDistance(Vertex start, int depthLimit) {
-        int[] distance = new int[vertices.size()];
-        Vertex[] parents = new Vertex[vertices.size()];
-        Arrays.fill(distance, -1);
-        distance[start.getId()] = 0;
-        int pointer = 0;
-        ArrayList<Vertex> queue = new ArrayList<>(vertices.size()); // instead of Queue for perf
-        queue.add(start);
-        while (pointer < queue.size()) {
-            final Vertex v = queue.get(pointer);
-            final List<Vertex> neighbors = v.getNeighbors();
-            for (int i = 0; i < neighbors.size(); i++) {
-                var u = neighbors.get(i);
-                if (distance[u.getId()] == -1) {
-                    final int newDistance = distance[v.getId()] + 1;
-                    if (newDistance >= depthLimit) {
-                        return new BfsResult(distance, parents);
-                    }
-                    distance[u.getId()] = newDistance;
-                    parents[u.getId()] = v;
-                    queue.add(u);
-                }
-            }
-            pointer++;
-        }
-        return new BfsResult(distance, parents);
+    /**
+     * The same as {@link #buildEdgeExpansions()}, but by the given number of tasks in the pool.
+     */
+    public void buildEdgeExpansions(Executor pool, int tasks) {
+        assert !isFullGraph();
+        edgeExpansions = EdgeExpansions.build(this, fullGraph, pool, tasks);
     }
 
+    @Nullable
+    EdgeExpansions getEdgeExpansions() {
+        return edgeExpansions;
+    }
 
     public void removeSingleEdgeVertexes(long identificatorStartVertex) {
+        assert !frozen;
         boolean[] deleted = new boolean[vertices.size()];
         boolean progress;
 //        do {
@@ -317,13 +395,128 @@ public class Graph {
     }
 
     public void buildIdentificatorToVertexMap() {
-        assert identificatorToVertex == null;
+        assert !frozen && identificatorToVertex == null;
         identificatorToVertex = new Long2ObjectOpenHashMap<>(vertices.size());
         for (Vertex v : vertices) {
             identificatorToVertex.put(v.getIdentificator(), v);
         }
     }
 
+    /**
+     * Makes the full graph read only: builds everything which is built lazily or by requests
+     * and forbids changes of vertices and edges. Per search state lives in workspaces of searches.
+     */
+    public void freeze() {
+        assert isFullGraph() && !frozen;
+        final long startTime = System.currentTimeMillis();
+        if (identificatorToVertex == null) {
+            buildIdentificatorToVertexMap();
+        }
+        calculateDistanceForNeighbours();
+        getSpatialIndex();
+        for (Vertex v : vertices) {
+            v.freeze();
+        }
+        vertices = Collections.unmodifiableList(vertices);
+        frozen = true;
+        LOGGER.info("froze graph with: {} vertices for: {}ms", vertices.size(), System.currentTimeMillis() - startTime);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Deep copy of vertices & edges, used to build compact graph from already pruned full graph.
+     */
+    public Graph copy() {
+        return copy(minKM, maxKM);
+    }
+
+    /**
+     * Deep copy for a request with its own distances, the full graph can be shared by requests.
+     */
+    public Graph copy(int minKM, int maxKM) {
+        List<Vertex> copies = new ArrayList<>(vertices.size());
+        for (int i = 0; i < vertices.size(); i++) {
+            final Vertex v = vertices.get(i);
+            assert v.getId() == i;
+            copies.add(new Vertex(i, v.getIdentificator(), v.getLatLon(), v.getRef()));
+        }
+        for (Vertex v : vertices) {
+            final List<Vertex> copyNeighbors = copies.get(v.getId()).getNeighbors();
+            for (Vertex u : v.getNeighbors()) {
+                copyNeighbors.add(copies.get(u.getId()));
+            }
+        }
+        return new Graph(copies, minKM, maxKM);
+    }
+
+    /**
+     * Vertex objects with neighbours over the csr graph, the csr graph itself isn't copied.
+     */
+    public static Graph fromCsrGraph(CsrGraph csrGraph, int minKM, int maxKM) {
+        List<Vertex> vertices = new ArrayList<>(csrGraph.size());
+        for (int i = 0; i < csrGraph.size(); i++) {
+            vertices.add(new Vertex(i, csrGraph.identificator(i), csrGraph.latLon(i), csrGraph.ref(i)));
+        }
+        for (int i = 0; i < csrGraph.size(); i++) {
+            final Vertex v = vertices.get(i);
+            for (int e = csrGraph.edgesStart(i); e < csrGraph.edgesEnd(i); e++) {
+                v.getNeighbors().add(vertices.get(csrGraph.target(e)));
+            }
+        }
+        Graph g = new Graph(vertices, minKM, maxKM);
+        g.csrGraph = csrGraph;
+        return g;
+    }
+
+    public void buildCsrGraph() {
+        assert csrGraph == null;
+        csrGraph = CsrGraph.fromVertices(vertices);
+        LOGGER.info("built csr graph with: {} vertices, {} edges, {} KB",
+            csrGraph.size(), csrGraph.edgesCount(), csrGraph.memoryBytes() / 1024);
+    }
+
+    public CsrGraph getCsrGraph() {
+        assert csrGraph != null;
+        return csrGraph;
+    }
+
+    public void setContractionHierarchy(ContractionHierarchy contractionHierarchy) {
+        assert !frozen && csrGraph != null && contractionHierarchy.matches(csrGraph);
+        this.contractionHierarchy = contractionHierarchy;
+    }
+
+    @Nullable
+    public ContractionHierarchy getContractionHierarchy() {
+        return contractionHierarchy;
+    }
+
+    public void buildLandmarks() {
+        assert !frozen && csrGraph != null;
+        landmarks = Landmarks.build(csrGraph, Landmarks.DEFAULT_COUNT);
+    }
+
+    @Nullable
+    public Landmarks getLandmarks() {
+        return landmarks;
+    }
+
+    public DijkstraStats getDijkstraStats() {
+        return dijkstraStats;
+    }
+
+    public void setDijkstraCache(DijkstraCache dijkstraCache) {
+        assert isFullGraph() && !frozen;
+        this.dijkstraCache = dijkstraCache;
+    }
+
+    public DijkstraCache getDijkstraCache() {
+        assert dijkstraCache != null;
+        return dijkstraCache;
+    }
+
     public Vertex findByIdentificator(long identificator) {
         assert identificatorToVertex != null;
         final Vertex v = identificatorToVertex.get(identificator);
@@ -342,6 +535,9 @@ public class Graph {
     }
 
     private void updateIds() {
+        assert !frozen;
+        spatialIndex = null;
+        edgeExpansions = null;
         for (int i = 0; i < vertices.size(); i++) {
             final Vertex v = vertices.get(i);
             Vertex newV = new Vertex(v);
@@ -358,129 +554,16 @@ public class Graph {
         }
     }
 
-    // TODO: make parallel
-    public void createSuperVertexes(double distance, long identificatorStartVertex) {
+    /**
+     * Merges dense areas into super vertices by {@link SuperVertexMerger} and removes merged vertices.
+     */
+    public void createSuperVertexesByGrid(double distance, long identificatorStartVertex) {
         assert !isFullGraph();
-        int tries = 0;
-        int iteration = 0;
-        // TODO: can be used bool[verticies.size()] additionally for fast check
-        //  cant be change to it because we need fast iteration over removed vertices as well
-        Set<Vertex> closeVertexes = new HashSet<>();
-        while (true) {
-            iteration++;
-            Vertex v = chooseBestVertexForRemoving(distance, identificatorStartVertex);
-            if (v == null) {
-                if (tries == 50) {
-                    break;
-                } else {
-                    tries++;
-                    continue;
-                }
-            }
-            assert v.getIdentificator() != identificatorStartVertex;
-            tries = 0;
-            v.setSuperVertex();
-
-            findCloseVertexes(distance, identificatorStartVertex, closeVertexes, v);
-            removeNeighborsForCloseVertexes(closeVertexes, v);
-
-            if (iteration % 500 == 0) {
-                LOGGER.info("graph removed some vertexes, now: {}", vertices.size());
-            }
-            deleteVerticesFromGraph(closeVertexes);
-            closeVertexes.clear();
-        }
+        final boolean[] removed = new SuperVertexMerger(vertices, distance, identificatorStartVertex).run();
+        vertices.removeIf(u -> removed[u.getId()]);
         updateIds();
     }
 
-    private static void removeNeighborsForCloseVertexes(Set<Vertex> closeVertexes, Vertex v) {
-        for (Vertex u : closeVertexes) {
-            for (Vertex neighbor : u.getNeighbors()) {
-                if (v.getId() == neighbor.getId()) {
-                    continue;
-                }
-                neighbor.removeNeighbor(u);
-                neighbor.addNeighbor(v);
-                v.addNeighbor(neighbor);
-            }
-        }
-    }
-
-    private void findCloseVertexes(double distance, long identificatorStartVertex, Set<Vertex> closeVertexes, Vertex v) {
-        for (int j = 0; j < vertices.size(); j++) {
-            Vertex u = vertices.get(j);
-            if (v.getId() == u.getId() || u.getIdentificator() == identificatorStartVertex) {
-                continue;
-            }
-            if (distance(v, u) < distance && !u.isRemoved()) {
-                closeVertexes.add(u);
-                u.setRemoved();
-            }
-        }
-    }
-
-    private Vertex chooseBestVertexForRemoving(double distance, long identificatorStartVertex) {
-        Vertex bestVertex = null;
-        int countMaxNeighbours = 0;
-
-        int randomIndex = random.nextInt(vertices.size());
-        while (vertices.get(randomIndex).isRemoved()) {
-            randomIndex = (randomIndex + 1) % vertices.size();
-        }
-        Vertex randomVertex = vertices.get(randomIndex);
-        final LatLon randomLatLon = randomVertex.getLatLon();
-
-        Vertex[] verticesArr = vertices.toArray(new Vertex[0]);
-        Arrays.parallelSort(verticesArr, (o1, o2) -> {
-            double distance1 = LatLon.fastDistance(o1.getLatLon(), randomLatLon);
-            double distance2 = LatLon.fastDistance(o2.getLatLon(), randomLatLon);
-            return Double.compare(distance1, distance2);
-        });
-        List<Vertex> sortVertices = Arrays.asList(verticesArr);
-
-        for (int m = 0; m < sortVertices.size(); m++) {
-            int count = 0;
-            int i = m - 1;
-            int j = m + 1;
-            final Vertex midV = sortVertices.get(m);
-            while (i >= 0
-                && distance(sortVertices.get(i), midV) < distance) {
-                if (!sortVertices.get(i).isRemoved()) {
-                    count++;
-                }
-                i--;
-            }
-            while (j < sortVertices.size()
-                && distance(sortVertices.get(j), midV) < distance) {
-                if (!sortVertices.get(j).isRemoved()) {
-                    count++;
-                }
-                j++;
-            }
-            if (count > countMaxNeighbours && midV.getIdentificator() != identificatorStartVertex) {
-                countMaxNeighbours = count;
-                bestVertex = midV;
-            }
-        }
-        if (countMaxNeighbours < 75) {
-            return null;
-        }
-        return bestVertex;
-    }
-
-    private void deleteVerticesFromGraph(Collection<Vertex> deleteVertices) {
-        for (Vertex v : vertices) {
-            List<Vertex> deleteForV = new ArrayList<>();
-            for (Vertex u : v.getNeighbors()) {
-                if (deleteVertices.contains(u)) {
-                    deleteForV.add(u);
-                }
-            }
-            v.getNeighbors().removeAll(deleteForV);
-        }
-        vertices.removeAll(deleteVertices);
-    }
-
     public Vertex getVertexById(int id) {
         return vertices.get(id);
     }
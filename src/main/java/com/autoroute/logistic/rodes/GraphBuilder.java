@@ -4,6 +4,7 @@ import com.autoroute.api.overpass.Mapper;
 import com.autoroute.api.overpass.OverpassResponse;
 import com.autoroute.gpx.GpxGenerator;
 import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.rodes.dijkstra.ContractionHierarchy;
 import com.autoroute.osm.WayPoint;
 import com.autoroute.utils.Utils;
 import io.jenetics.jpx.GPX;
@@ -11,8 +12,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 public class GraphBuilder {
 
@@ -23,33 +27,109 @@ public class GraphBuilder {
                                        int minDistanceKM,
                                        int maxDistanceKM) {
         LOGGER.info("Start building full-graph");
-        final Graph g = Mapper.mapToGraph(response, minDistanceKM, maxDistanceKM);
+        // compact graph is copied from full graph, so response is not needed anymore
+        final Graph g = Mapper.mapToGraph(response, minDistanceKM, maxDistanceKM, true);
 
         generalPhases(g, start, maxDistanceKM, g.findNearestVertex(start).getIdentificator(), 0.05);
+        g.buildCsrGraph();
         return g;
     }
 
+    /**
+     * Full graph has roads of the tile of the start point ({@link Utils#pathForGraph}), so it's written once
+     * to the file and read from it by next requests from the tile. Vertices which are not reachable
+     * from the start of the first request are pruned, next requests start from the nearest kept vertex.
+     * The csr arrays of a read graph stay in the mapped file, but vertex objects and their neighbour lists
+     * are still created on the heap for the compact graph and cycles.
+     */
+    public static Graph loadOrBuildFullGraph(Supplier<OverpassResponse> response,
+                                             LatLon start,
+                                             int minDistanceKM,
+                                             int maxDistanceKM) {
+        final Path graphPath = Utils.pathForGraph(start, maxDistanceKM);
+        final Graph g = loadOrBuildFullGraph(graphPath, response, start, minDistanceKM, maxDistanceKM);
+        g.buildLandmarks();
+        if (Utils.isContractionHierarchyEnabled()) {
+            g.setContractionHierarchy(loadOrBuildContractionHierarchy(graphPath, g.getCsrGraph()));
+        }
+        return g;
+    }
+
+    private static Graph loadOrBuildFullGraph(Path graphPath,
+                                              Supplier<OverpassResponse> response,
+                                              LatLon start,
+                                              int minDistanceKM,
+                                              int maxDistanceKM) {
+        if (graphPath.toFile().exists()) {
+            try {
+                final CsrGraph csrGraph = GraphFile.read(graphPath);
+                return Graph.fromCsrGraph(csrGraph, minDistanceKM, maxDistanceKM);
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.warn("couldn't read graph from: {}, build it again", graphPath, e);
+            }
+        }
+        final Graph g = buildFullGraph(response.get(), start, minDistanceKM, maxDistanceKM);
+        try {
+            GraphFile.write(g.getCsrGraph(), graphPath);
+        } catch (IOException e) {
+            LOGGER.warn("couldn't write graph to: {}", graphPath, e);
+        }
+        return g;
+    }
+
+    private static ContractionHierarchy loadOrBuildContractionHierarchy(Path graphPath, CsrGraph csrGraph) {
+        final Path chPath = Utils.pathForContractionHierarchy(graphPath);
+        if (chPath.toFile().exists()) {
+            try {
+                final ContractionHierarchy ch = ContractionHierarchy.read(chPath);
+                if (ch.matches(csrGraph)) {
+                    return ch;
+                }
+                LOGGER.warn("contraction hierarchy: {} was built for another graph, build it again", chPath);
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.warn("couldn't read contraction hierarchy from: {}, build it again", chPath, e);
+            }
+        }
+        final ContractionHierarchy ch = ContractionHierarchy.build(csrGraph);
+        try {
+            ch.write(chPath);
+        } catch (IOException e) {
+            LOGGER.warn("couldn't write contraction hierarchy to: {}", chPath, e);
+        }
+        return ch;
+    }
+
     // TODO: add timing stats and print after building
-    public static Graph buildCompactGraph(OverpassResponse response,
-                                          LatLon start,
+    /**
+     * @param pool  of the request for searches in the full graph.
+     * @param tasks number of parallel tasks in the pool.
+     */
+    public static Graph buildCompactGraph(LatLon start,
                                           long identificatorStartVertex,
+                                          Graph fullGraph,
                                           int minDistanceKM,
                                           int maxDistanceKM,
-                                          Graph fullGraph) {
+                                          Executor pool,
+                                          int tasks) {
         LOGGER.info("Start building graph");
-        LOGGER.info("Start mapToVertex");
-        Graph g = Mapper.mapToGraph(response, minDistanceKM, maxDistanceKM, true);
-        LOGGER.info("Finish mapToVertex");
+        LOGGER.info("Start copy full graph");
+        // the full graph can be frozen and shared, so only the copy is changed
+        Graph g = fullGraph.copy(minDistanceKM, maxDistanceKM);
+        LOGGER.info("Finish copy full graph");
         g.setFullGraph(fullGraph);
 
-        generalPhases(g, start, maxDistanceKM, identificatorStartVertex, 0.1);
+        // full graph already passed generalPhases with smaller edgeDistance.
+        // removeSingleEdgeVertexes & removeNotVisitedVertexes don't change anything after adding more edges from start
+        LOGGER.info("Start addEdgesFromStartPoint");
+        g.addEdgesFromStartPoint(getNearestVertex(g, start, identificatorStartVertex), 0.1);
+        g.checkGraph(identificatorStartVertex);
 
         if (Utils.isDebugging()) {
             Utils.writeDebugGPX(g.getVertices(), "graph/g1");
         }
         LOGGER.info("Start createSuperVertexes, vertices: {}", g.size());
         var startCreateSuperVertexes = System.currentTimeMillis();
-        g.createSuperVertexes(1, identificatorStartVertex);
+        g.createSuperVertexesByGrid(1, identificatorStartVertex);
         LOGGER.info("createSuperVertexes took: {}", (System.currentTimeMillis() - startCreateSuperVertexes) / 1000);
         LOGGER.info("Finished createSuperVertexes, vertices: {}", g.size());
         g.checkGraph(identificatorStartVertex);
@@ -82,6 +162,8 @@ public class GraphBuilder {
 
         LOGGER.info("Start calculateDistanceForNeighbours");
         g.calculateDistanceForNeighbours();
+        // ids don't change after this point, so expansions are valid for the whole search
+        g.buildEdgeExpansions(pool, tasks);
 
         assert g.findNearestVertex(start).getIdentificator() == identificatorStartVertex;
         g.checkGraph(identificatorStartVertex);
@@ -93,7 +175,7 @@ public class GraphBuilder {
 
     private static Vertex getNearestVertex(Graph g, LatLon start, long identificatorStartVertex) {
         final Vertex nearestVertex = g.findNearestVertex(start);
-        assert g.findNearestVertex(start).getIdentificator() == identificatorStartVertex;
+        assert nearestVertex.getIdentificator() == identificatorStartVertex;
         return nearestVertex;
     }
 
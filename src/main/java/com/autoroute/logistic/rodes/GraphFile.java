@@ -0,0 +1,177 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.utils.HMInterner;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file with {@link CsrGraph}. Little-endian, layout:
+ * <pre>
+ * header (32 bytes): magic, version, vertices, edges, refs count, refs bytes, 8 reserved bytes
+ * lats double[vertices], lons double[vertices], identificators long[vertices],
+ * offsets int[vertices + 1], targets int[edges], weights float[edges], refIds int[vertices],
+ * refs: (int length, utf-8 bytes)[refs count]
+ * </pre>
+ * The file is mapped by {@link FileChannel#map}, so arrays are not copied to the heap.
+ */
+public class GraphFile {
+
+    private static final Logger LOGGER = LogManager.getLogger(GraphFile.class);
+
+    static final int MAGIC = 0x41524746; // ARGF
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    public static void write(CsrGraph g, Path path) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final String[] refs = g.refs();
+        byte[][] refsBytes = new byte[refs.length][];
+        int refsBytesSize = 0;
+        for (int i = 0; i < refs.length; i++) {
+            refsBytes[i] = refs[i].getBytes(StandardCharsets.UTF_8);
+            refsBytesSize += 4 + refsBytes[i].length;
+        }
+
+        final int n = g.size();
+        final int m = g.edgesCount();
+        path.toAbsolutePath().getParent().toFile().mkdirs();
+        final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpPath,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(n);
+            buffer.putInt(m);
+            buffer.putInt(refs.length);
+            buffer.putInt(refsBytesSize);
+            buffer.putLong(0);
+            for (int v = 0; v < n; v++) {
+                buffer = ensureCapacity(channel, buffer, 8).putDouble(g.lat(v));
+            }
+            for (int v = 0; v < n; v++) {
+                buffer = ensureCapacity(channel, buffer, 8).putDouble(g.lon(v));
+            }
+            for (int v = 0; v < n; v++) {
+                buffer = ensureCapacity(channel, buffer, 8).putLong(g.identificator(v));
+            }
+            for (int v = 0; v <= n; v++) {
+                buffer = ensureCapacity(channel, buffer, 4).putInt(v == n ? m : g.edgesStart(v));
+            }
+            for (int e = 0; e < m; e++) {
+                buffer = ensureCapacity(channel, buffer, 4).putInt(g.target(e));
+            }
+            for (int e = 0; e < m; e++) {
+                buffer = ensureCapacity(channel, buffer, 4).putFloat(g.weight(e));
+            }
+            for (int v = 0; v < n; v++) {
+                buffer = ensureCapacity(channel, buffer, 4).putInt(g.refId(v));
+            }
+            for (byte[] ref : refsBytes) {
+                buffer = ensureCapacity(channel, buffer, 4).putInt(ref.length);
+                for (byte b : ref) {
+                    buffer = ensureCapacity(channel, buffer, 1).put(b);
+                }
+            }
+            flush(channel, buffer);
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.info("wrote graph with: {} vertices to: {} for: {}ms",
+            n, path, System.currentTimeMillis() - startTime);
+    }
+
+    public static CsrGraph read(Path path) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final MappedByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // mapping stays valid after the channel is closed
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        file.order(ByteOrder.LITTLE_ENDIAN);
+        if (file.capacity() < HEADER_BYTES || file.getInt(0) != MAGIC) {
+            throw new IllegalStateException("not a graph file: " + path);
+        }
+        final int version = file.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalStateException("unsupported graph file version: " + version + " in: " + path);
+        }
+        final int n = file.getInt(8);
+        final int m = file.getInt(12);
+        final int refsCount = file.getInt(16);
+        final int refsBytesSize = file.getInt(20);
+        final long expectedSize = HEADER_BYTES + 24L * n + 4L * (n + 1) + 8L * m + 4L * n + refsBytesSize;
+        if (file.capacity() != expectedSize) {
+            throw new IllegalStateException("graph file is broken: " + path
+                + ", size: " + file.capacity() + ", expected: " + expectedSize);
+        }
+
+        int position = HEADER_BYTES;
+        final DoubleBuffer lats = slice(file, position, 8 * n).asDoubleBuffer();
+        position += 8 * n;
+        final DoubleBuffer lons = slice(file, position, 8 * n).asDoubleBuffer();
+        position += 8 * n;
+        final LongBuffer identificators = slice(file, position, 8 * n).asLongBuffer();
+        position += 8 * n;
+        final IntBuffer offsets = slice(file, position, 4 * (n + 1)).asIntBuffer();
+        position += 4 * (n + 1);
+        final IntBuffer targets = slice(file, position, 4 * m).asIntBuffer();
+        position += 4 * m;
+        final FloatBuffer weights = slice(file, position, 4 * m).asFloatBuffer();
+        position += 4 * m;
+        final IntBuffer refIds = slice(file, position, 4 * n).asIntBuffer();
+        position += 4 * n;
+
+        // Cycle compares refs by reference, so they should be interned as refs from OverPassAPI
+        final HMInterner interner = new HMInterner();
+        String[] refs = new String[refsCount];
+        for (int i = 0; i < refsCount; i++) {
+            final int length = file.getInt(position);
+            position += 4;
+            byte[] bytes = new byte[length];
+            file.get(position, bytes);
+            position += length;
+            refs[i] = interner.intern(new String(bytes, StandardCharsets.UTF_8));
+        }
+        assert position == expectedSize;
+
+        final CsrGraph g = new CsrGraph(offsets, targets, weights, lats, lons, identificators, refIds, refs);
+        LOGGER.info("read graph with: {} vertices from: {} for: {}ms",
+            n, path, System.currentTimeMillis() - startTime);
+        return g;
+    }
+
+    private static ByteBuffer slice(MappedByteBuffer file, int position, int length) {
+        return file.slice(position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer ensureCapacity(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.autoroute.logistic.rodes;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Frozen full graphs of running requests by paths of their files. Concurrent requests with the same graph
+ * share one instance: the first request loads it, the next ones wait for it. A graph is dropped
+ * when the last request releases it, the next request maps it from the file again.
+ */
+public class GraphRegistry {
+
+    private static final Logger LOGGER = LogManager.getLogger(GraphRegistry.class);
+
+    private final Map<Path, Entry> graphs = new HashMap<>();
+
+    /**
+     * Every successful acquire must be followed by {@link #release(Path)}.
+     *
+     * @param loader builds a frozen full graph, it's called only if nobody uses the graph now.
+     */
+    public Graph acquire(Path graphPath, Supplier<Graph> loader) {
+        final Entry entry;
+        final boolean load;
+        synchronized (this) {
+            Entry e = graphs.get(graphPath);
+            load = e == null;
+            if (load) {
+                e = new Entry();
+                graphs.put(graphPath, e);
+            }
+            e.users++;
+            entry = e;
+            if (!load) {
+                LOGGER.info("graph: {} is shared by: {} requests", graphPath, e.users);
+            }
+        }
+        if (load) {
+            try {
+                final Graph g = loader.get();
+                assert g.isFrozen();
+                entry.graph.complete(g);
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    graphs.remove(graphPath, entry);
+                }
+                entry.graph.completeExceptionally(e);
+            }
+        }
+        try {
+            return entry.graph.join();
+        } catch (CompletionException e) {
+            synchronized (this) {
+                release(graphPath, entry);
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public synchronized void release(Path graphPath) {
+        final Entry entry = graphs.get(graphPath);
+        assert entry != null;
+        release(graphPath, entry);
+    }
+
+    private void release(Path graphPath, Entry entry) {
+        assert entry.users > 0;
+        entry.users--;
+        if (entry.users == 0) {
+            graphs.remove(graphPath, entry);
+        }
+    }
+
+    public synchronized int size() {
+        return graphs.size();
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Graph> graph = new CompletableFuture<>();
+        private int users = 0;
+    }
+}
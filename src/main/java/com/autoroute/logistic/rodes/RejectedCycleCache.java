@@ -0,0 +1,87 @@
+package com.autoroute.logistic.rodes;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fingerprints of cycles of the compact graph which were rejected with the reason, so a dfs which finds
+ * the same cycle again skips it before any Dijkstra. Added cycles are kept as duplicates.
+ * The cache is cleared when it's full, it lives as long as the compact graph.
+ */
+public class RejectedCycleCache {
+
+    public enum Reason {
+        OUT_OF_RANGE,
+        DISTANCE,
+        IN_CITY,
+        SMALL,
+        SUPER_VERTICES,
+        BROKEN,
+        DUPLICATE
+    }
+
+    private static final Reason[] REASONS = Reason.values();
+    static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+    private final Long2ObjectOpenHashMap<Reason> rejected = new Long2ObjectOpenHashMap<>();
+    private final int maxEntries;
+    private final LongAdder[] rejects = new LongAdder[REASONS.length];
+    private final LongAdder skipped = new LongAdder();
+
+    RejectedCycleCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    RejectedCycleCache(int maxEntries) {
+        assert maxEntries > 0;
+        this.maxEntries = maxEntries;
+        for (int i = 0; i < rejects.length; i++) {
+            rejects[i] = new LongAdder();
+        }
+    }
+
+    @Nullable
+    synchronized Reason get(long fingerprint) {
+        return rejected.get(fingerprint);
+    }
+
+    synchronized void put(long fingerprint, Reason reason) {
+        if (rejected.size() >= maxEntries) {
+            rejected.clear();
+        }
+        rejected.put(fingerprint, reason);
+    }
+
+    void countReject(Reason reason, boolean fromCache) {
+        rejects[reason.ordinal()].increment();
+        if (fromCache) {
+            skipped.increment();
+        }
+    }
+
+    public long getRejects(Reason reason) {
+        return rejects[reason.ordinal()].sum();
+    }
+
+    /**
+     * @return number of cycles which were rejected by the cache without checks.
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public synchronized int size() {
+        return rejected.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("entries: " + size() + ", skipped: " + getSkipped());
+        for (Reason reason : REASONS) {
+            sb.append(", ").append(reason.name().toLowerCase()).append(": ").append(getRejects(reason));
+        }
+        return sb.toString();
+    }
+}
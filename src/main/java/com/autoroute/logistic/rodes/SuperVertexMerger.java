@@ -0,0 +1,204 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.SpatialIndex;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Merges dense areas into super vertices: the vertex with the most alive vertices closer than distance (density)
+ * becomes a super vertex and takes edges of those vertices. Densities are counted once over a grid with
+ * cell = distance and then only decremented around merged vertices, the densest vertex is taken from a bucket queue.
+ * A merge changes vertices closer than 2 distances to the super vertex and neighbours of merged vertices.
+ * Vertices are grouped by tiles with the side of {@link #TILE_DISTANCES} distances, so tiles of one of 4 colors
+ * don't touch each other and are merged in parallel, every tile by its own queue. A merge which touches a vertex
+ * of another tile is left for the sequential pass over the whole graph after all colors.
+ */
+final class SuperVertexMerger {
+
+    private static final Logger LOGGER = LogManager.getLogger(SuperVertexMerger.class);
+
+    static final int MIN_VERTICES_FOR_SUPER_VERTEX = 75;
+    // at least 2, so changes of merges in tiles of one color don't meet
+    private static final int TILE_DISTANCES = 8;
+    private static final double KM_IN_DEGREE = 6371 * Math.PI / 180;
+
+    private final List<Vertex> vertices;
+    private final double distance;
+    private final long identificatorStartVertex;
+    private final SpatialIndex index; // positions in index are ids
+    private final int[] density;
+    private final boolean[] removed;
+    private final long[] tiles;
+    private final AtomicInteger superVertexes = new AtomicInteger();
+    private final AtomicInteger removedVertexes = new AtomicInteger();
+
+    SuperVertexMerger(List<Vertex> vertices, double distance, long identificatorStartVertex) {
+        this.vertices = vertices;
+        this.distance = distance;
+        this.identificatorStartVertex = identificatorStartVertex;
+        this.index = new SpatialIndex(vertices, distance);
+        this.density = new int[vertices.size()];
+        this.removed = new boolean[vertices.size()];
+        this.tiles = new long[vertices.size()];
+    }
+
+    /**
+     * Marks super vertices and moves edges of merged vertices to them, merged vertices stay in the list.
+     *
+     * @return flags of merged vertices by ids.
+     */
+    boolean[] run() {
+        final long startTime = System.currentTimeMillis();
+        final int n = vertices.size();
+        IntStream.range(0, n).parallel().forEach(i -> {
+            final Vertex v = vertices.get(i);
+            assert v.getId() == i;
+            int[] count = new int[1];
+            index.forEachInRadius(v.getLatLon(), distance, u -> count[0]++);
+            density[i] = count[0] - 1;
+        });
+
+        // a degree of longitude is the shortest at the max latitude, so tiles are not narrower than the side anywhere
+        double maxAbsLat = 0;
+        for (Vertex v : vertices) {
+            maxAbsLat = Math.max(maxAbsLat, Math.abs(v.getLatLon().lat()));
+        }
+        final double tileLat = TILE_DISTANCES * distance / KM_IN_DEGREE;
+        final double tileLon = tileLat / Math.max(0.01, Math.cos(Math.toRadians(maxAbsLat)));
+        List<List<IntArrayList>> tilesByColor = new ArrayList<>(4);
+        for (int color = 0; color < 4; color++) {
+            tilesByColor.add(new ArrayList<>());
+        }
+        Long2ObjectOpenHashMap<IntArrayList> idsByTile = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < n; i++) {
+            final long row = (long) Math.floor(vertices.get(i).getLatLon().lat() / tileLat);
+            final long col = (long) Math.floor(vertices.get(i).getLatLon().lon() / tileLon);
+            tiles[i] = (row << 32) | (col & 0xffffffffL);
+            IntArrayList ids = idsByTile.get(tiles[i]);
+            if (ids == null) {
+                ids = new IntArrayList();
+                idsByTile.put(tiles[i], ids);
+                tilesByColor.get((int) (((row & 1) << 1) | (col & 1))).add(ids);
+            }
+            ids.add(i);
+        }
+
+        for (List<IntArrayList> tilesOfColor : tilesByColor) {
+            tilesOfColor.parallelStream().forEach(ids -> merge(ids, true));
+        }
+        final int inTiles = superVertexes.get();
+        merge(new IntArrayList(IntStream.range(0, n).toArray()), false);
+
+        LOGGER.info("created: {} super vertexes ({} in: {} tiles), removed: {} vertexes, took: {}ms",
+            superVertexes.get(), inTiles, idsByTile.size(), removedVertexes.get(), System.currentTimeMillis() - startTime);
+        return removed;
+    }
+
+    /**
+     * @param inTile merges only vertices which don't touch other tiles.
+     */
+    private void merge(IntArrayList ids, boolean inTile) {
+        int maxDensity = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            maxDensity = Math.max(maxDensity, density[ids.getInt(i)]);
+        }
+        IntArrayList[] buckets = new IntArrayList[maxDensity + 1];
+        for (int i = 0; i < ids.size(); i++) {
+            final int id = ids.getInt(i);
+            final Vertex v = vertices.get(id);
+            if (density[id] >= MIN_VERTICES_FOR_SUPER_VERTEX && !removed[id] && !v.isSuperVertex()
+                && v.getIdentificator() != identificatorStartVertex) {
+                addToBucket(buckets, density[id], id);
+            }
+        }
+
+        List<Vertex> closeVertexes = new ArrayList<>();
+        int bucket = maxDensity;
+        while (bucket >= MIN_VERTICES_FOR_SUPER_VERTEX) {
+            final IntArrayList bucketIds = buckets[bucket];
+            if (bucketIds == null || bucketIds.isEmpty()) {
+                bucket--;
+                continue;
+            }
+            final int id = bucketIds.removeInt(bucketIds.size() - 1);
+            if (removed[id]) {
+                continue;
+            }
+            if (density[id] != bucket) {
+                // densities only decrease, so the vertex goes to one of the next buckets
+                if (density[id] >= MIN_VERTICES_FOR_SUPER_VERTEX) {
+                    addToBucket(buckets, density[id], id);
+                }
+                continue;
+            }
+            mergeAround(id, closeVertexes, inTile);
+        }
+    }
+
+    private void mergeAround(int id, List<Vertex> closeVertexes, boolean inTile) {
+        final Vertex v = vertices.get(id);
+        index.forEachInRadius(v.getLatLon(), distance, p -> {
+            if (p != id && !removed[p] && vertices.get(p).getIdentificator() != identificatorStartVertex) {
+                closeVertexes.add(vertices.get(p));
+            }
+        });
+        if (inTile && !isInTile(closeVertexes, tiles[id])) {
+            closeVertexes.clear();
+            return;
+        }
+        for (Vertex u : closeVertexes) {
+            removed[u.getId()] = true;
+        }
+        v.setSuperVertex();
+        for (Vertex u : closeVertexes) {
+            for (Vertex neighbor : u.getNeighbors()) {
+                if (v.getId() == neighbor.getId()) {
+                    continue;
+                }
+                neighbor.removeNeighbor(u);
+                neighbor.addNeighbor(v);
+                v.addNeighbor(neighbor);
+            }
+        }
+        v.getNeighbors().removeIf(u -> removed[u.getId()]);
+        for (Vertex u : closeVertexes) {
+            index.forEachInRadius(u.getLatLon(), distance, p -> density[p]--);
+            density[u.getId()]++; // u itself was not counted in its density
+        }
+        final int superVertexesCount = superVertexes.incrementAndGet();
+        final int removedCount = removedVertexes.addAndGet(closeVertexes.size());
+        closeVertexes.clear();
+        if (superVertexesCount % 500 == 0) {
+            LOGGER.info("graph removed some vertexes, now: {}", vertices.size() - removedCount);
+        }
+    }
+
+    // merged vertices and their neighbours are changed by the merge
+    private boolean isInTile(List<Vertex> closeVertexes, long tile) {
+        for (Vertex u : closeVertexes) {
+            if (tiles[u.getId()] != tile) {
+                return false;
+            }
+            for (Vertex neighbor : u.getNeighbors()) {
+                if (tiles[neighbor.getId()] != tile) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void addToBucket(IntArrayList[] buckets, int bucket, int id) {
+        if (buckets[bucket] == null) {
+            buckets[bucket] = new IntArrayList();
+        }
+        buckets[bucket].add(id);
+    }
+}
@@ -5,6 +5,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Vertex {
@@ -15,11 +16,12 @@ public class Vertex {
     // unique identifier for every vertex. id in overpass.
     private final long identificator;
     private final LatLon latLon;
-    private final List<Vertex> neighbors; // TODO: can be an array of ints of ids, but should be updated properly
+    private List<Vertex> neighbors; // TODO: can be an array of ints of ids, but should be updated properly
     private double[] distances; // TODO: can be an array of ints of ids, but should be updated properly
     private boolean superVertex = false;
     private final String ref;
-    private boolean removed = false;
+    // vertex of a frozen full graph, it's shared by threads and can't be changed
+    private boolean frozen = false;
 
     public Vertex(LatLon latLon) {
         this(-1, -1, latLon, null);
@@ -45,6 +47,7 @@ public class Vertex {
     }
 
     public void calculateDistance() {
+        assert !frozen;
         this.distances = new double[neighbors.size()];
         for (int i = 0; i < neighbors.size(); i++) {
             var u = neighbors.get(i);
@@ -65,6 +68,7 @@ public class Vertex {
     }
 
     public boolean addNeighbor(Vertex v) {
+        assert !frozen;
         if (!neighbors.contains(v)) {
             neighbors.add(v);
             return true;
@@ -73,6 +77,7 @@ public class Vertex {
     }
 
     public boolean removeNeighbor(Vertex v) {
+        assert !frozen;
         return neighbors.remove(v);
     }
 
@@ -97,6 +102,7 @@ public class Vertex {
     }
 
     public void setId(int id) {
+        assert !frozen;
         this.id = id;
     }
 
@@ -105,6 +111,7 @@ public class Vertex {
     }
 
     public void setSuperVertex() {
+        assert !frozen;
         this.superVertex = true;
     }
 
@@ -116,12 +123,9 @@ public class Vertex {
         return ref;
     }
 
-    public void setRemoved() {
-        this.removed = true;
-    }
-
-    public boolean isRemoved() {
-        return this.removed;
+    void freeze() {
+        neighbors = Collections.unmodifiableList(neighbors);
+        frozen = true;
     }
 
     @Override
@@ -0,0 +1,326 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.rodes.CsrGraph;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Contraction hierarchy of a {@link CsrGraph}: every vertex has a rank, upward edges go from a vertex to
+ * neighbours with higher rank. Shortcut edges keep the middle vertex they were created over, so a path
+ * can be unpacked to vertices of the graph.
+ * Query is a bidirectional Dijkstra where both sides go only upward, it runs over the workspaces of the caller.
+ * <p>
+ * File layout is little-endian, header (32 bytes): magic, version, vertices, upward edges, graph edges,
+ * 4 reserved bytes, {@link CsrGraph#checksum()} of the graph; then ranks int[vertices], offsets int[vertices + 1], targets int[edges],
+ * weights double[edges], middles int[edges].
+ */
+public class ContractionHierarchy {
+
+    private static final Logger LOGGER = LogManager.getLogger(ContractionHierarchy.class);
+
+    static final int MAGIC = 0x48435241; // ARCH
+    static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+
+    private final IntBuffer ranks;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final DoubleBuffer weights;
+    private final IntBuffer middles; // -1 for edges of the graph
+    private final int graphEdgesCount;
+    private final long graphChecksum;
+
+    ContractionHierarchy(IntBuffer ranks, IntBuffer offsets, IntBuffer targets,
+                         DoubleBuffer weights, IntBuffer middles, int graphEdgesCount, long graphChecksum) {
+        assert offsets.limit() == ranks.limit() + 1;
+        assert targets.limit() == weights.limit() && targets.limit() == middles.limit();
+        this.ranks = ranks;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.middles = middles;
+        this.graphEdgesCount = graphEdgesCount;
+        this.graphChecksum = graphChecksum;
+    }
+
+    public static ContractionHierarchy build(CsrGraph g) {
+        return new ContractionHierarchyBuilder(g).build();
+    }
+
+    public int size() {
+        return ranks.limit();
+    }
+
+    public int edgesCount() {
+        return targets.limit();
+    }
+
+    /**
+     * @return true if hierarchy was built for the same graph: the same edges with the same weights.
+     */
+    public boolean matches(CsrGraph g) {
+        return g.size() == size() && g.edgesCount() == graphEdgesCount && g.checksum() == graphChecksum;
+    }
+
+    /**
+     * Single query with its own workspaces.
+     *
+     * @return length of the shortest path or {@link Double#POSITIVE_INFINITY} if there is no path.
+     */
+    public double distance(int from, int to) {
+        final Query query = new Query(new DijkstraWorkspace(size()), new DijkstraWorkspace(size()));
+        query.search(from, to);
+        return query.best;
+    }
+
+    /**
+     * Single query with its own workspaces.
+     *
+     * @return ids of vertices of the shortest path including from & to or null if there is no path.
+     */
+    @Nullable
+    public int[] findPath(int from, int to) {
+        return new Query(new DijkstraWorkspace(size()), new DijkstraWorkspace(size())).findPath(from, to);
+    }
+
+    /**
+     * Query over the workspaces of the search, they must be of the graph of the hierarchy.
+     */
+    Query query(SearchWorkspace workspace) {
+        return new Query(workspace.forward(), workspace.backward());
+    }
+
+    /**
+     * Adds the path from x to y excluding x.
+     */
+    private void unpack(int x, int y, IntArrayList path) {
+        final int lower = ranks.get(x) < ranks.get(y) ? x : y;
+        final int higher = lower == x ? y : x;
+        final int edge = findUpwardEdge(lower, higher);
+        assert edge != -1;
+        final int middle = middles.get(edge);
+        if (middle == -1) {
+            path.add(y);
+        } else {
+            unpack(x, middle, path);
+            unpack(middle, y, path);
+        }
+    }
+
+    private int findUpwardEdge(int v, int u) {
+        final int end = offsets.get(v + 1);
+        for (int e = offsets.get(v); e < end; e++) {
+            if (targets.get(e) == u) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    final class Query {
+
+        private final DijkstraWorkspace forward;
+        private final DijkstraWorkspace backward;
+        private double best;
+        private int meet;
+        private int settled;
+
+        private Query(DijkstraWorkspace forward, DijkstraWorkspace backward) {
+            assert forward.size() == size() && backward.size() == size();
+            this.forward = forward;
+            this.backward = backward;
+        }
+
+        /**
+         * @return ids of vertices of the shortest path including from & to or null if there is no path.
+         */
+        @Nullable
+        int[] findPath(int from, int to) {
+            search(from, to);
+            if (meet == -1) {
+                return null;
+            }
+            IntArrayList hierarchyPath = new IntArrayList();
+            for (int v = meet; v != -1; v = forward.prev(v)) {
+                hierarchyPath.add(v);
+            }
+            PathCodec.reverse(hierarchyPath, 0);
+            for (int v = backward.prev(meet); v != -1; v = backward.prev(v)) {
+                hierarchyPath.add(v);
+            }
+
+            IntArrayList path = new IntArrayList(hierarchyPath.size() * 4);
+            path.add(from);
+            for (int i = 1; i < hierarchyPath.size(); i++) {
+                unpack(hierarchyPath.getInt(i - 1), hierarchyPath.getInt(i), path);
+            }
+            assert path.getInt(path.size() - 1) == to;
+            return path.toIntArray();
+        }
+
+        /**
+         * @return number of settled vertices of the last search.
+         */
+        int settled() {
+            return settled;
+        }
+
+        private void search(int from, int to) {
+            forward.reset();
+            backward.reset();
+            best = Double.POSITIVE_INFINITY;
+            meet = -1;
+            settled = 0;
+            forward.set(from, 0, -1);
+            forward.heap().push(from, 0);
+            backward.set(to, 0, -1);
+            backward.heap().push(to, 0);
+
+            final IndexedMinHeap forwardHeap = forward.heap();
+            final IndexedMinHeap backwardHeap = backward.heap();
+            while (!forwardHeap.isEmpty() || !backwardHeap.isEmpty()) {
+                final double forwardMin = forwardHeap.isEmpty() ? Double.POSITIVE_INFINITY : forwardHeap.minKey();
+                final double backwardMin = backwardHeap.isEmpty() ? Double.POSITIVE_INFINITY : backwardHeap.minKey();
+                if (Math.min(forwardMin, backwardMin) >= best) {
+                    break;
+                }
+                if (forwardMin <= backwardMin) {
+                    step(forward, backward);
+                } else {
+                    step(backward, forward);
+                }
+            }
+        }
+
+        private void step(DijkstraWorkspace current, DijkstraWorkspace other) {
+            final int v = current.heap().pop();
+            settled++;
+            final double distanceToV = current.distance(v);
+            if (other.isReached(v) && distanceToV + other.distance(v) < best) {
+                best = distanceToV + other.distance(v);
+                meet = v;
+            }
+            final int start = offsets.get(v);
+            final int end = offsets.get(v + 1);
+            // stall-on-demand: v is reached by a shorter path from a higher vertex, it can't be on the shortest path
+            for (int e = start; e < end; e++) {
+                if (current.distance(targets.get(e)) + weights.get(e) < distanceToV) {
+                    return;
+                }
+            }
+            for (int e = start; e < end; e++) {
+                final int u = targets.get(e);
+                final double d = distanceToV + weights.get(e);
+                if (d < current.distance(u)) {
+                    current.set(u, d, v);
+                    current.heap().push(u, d);
+                }
+            }
+        }
+    }
+
+    public void write(Path path) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final int n = size();
+        final int m = edgesCount();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4 * n + 4 * (n + 1) + 16 * m)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(n);
+        buffer.putInt(m);
+        buffer.putInt(graphEdgesCount);
+        buffer.putInt(0);
+        buffer.putLong(graphChecksum);
+        for (int v = 0; v < n; v++) {
+            buffer.putInt(ranks.get(v));
+        }
+        for (int v = 0; v <= n; v++) {
+            buffer.putInt(offsets.get(v));
+        }
+        for (int e = 0; e < m; e++) {
+            buffer.putInt(targets.get(e));
+        }
+        for (int e = 0; e < m; e++) {
+            buffer.putDouble(weights.get(e));
+        }
+        for (int e = 0; e < m; e++) {
+            buffer.putInt(middles.get(e));
+        }
+        buffer.flip();
+
+        path.toAbsolutePath().getParent().toFile().mkdirs();
+        final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpPath,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.info("wrote contraction hierarchy with: {} edges to: {} for: {}ms",
+            m, path, System.currentTimeMillis() - startTime);
+    }
+
+    public static ContractionHierarchy read(Path path) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final MappedByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        file.order(ByteOrder.LITTLE_ENDIAN);
+        if (file.capacity() < HEADER_BYTES || file.getInt(0) != MAGIC) {
+            throw new IllegalStateException("not a contraction hierarchy file: " + path);
+        }
+        final int version = file.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalStateException("unsupported contraction hierarchy version: " + version + " in: " + path);
+        }
+        final int n = file.getInt(8);
+        final int m = file.getInt(12);
+        final int graphEdgesCount = file.getInt(16);
+        final long graphChecksum = file.getLong(24);
+        final long expectedSize = HEADER_BYTES + 4L * n + 4L * (n + 1) + 16L * m;
+        if (file.capacity() != expectedSize) {
+            throw new IllegalStateException("contraction hierarchy file is broken: " + path
+                + ", size: " + file.capacity() + ", expected: " + expectedSize);
+        }
+
+        int position = HEADER_BYTES;
+        final IntBuffer ranks = slice(file, position, 4 * n).asIntBuffer();
+        position += 4 * n;
+        final IntBuffer offsets = slice(file, position, 4 * (n + 1)).asIntBuffer();
+        position += 4 * (n + 1);
+        final IntBuffer targets = slice(file, position, 4 * m).asIntBuffer();
+        position += 4 * m;
+        final DoubleBuffer weights = slice(file, position, 8 * m).asDoubleBuffer();
+        position += 8 * m;
+        final IntBuffer middles = slice(file, position, 4 * m).asIntBuffer();
+        position += 4 * m;
+        assert position == expectedSize;
+
+        final ContractionHierarchy ch = new ContractionHierarchy(ranks, offsets, targets, weights, middles,
+            graphEdgesCount, graphChecksum);
+        LOGGER.info("read contraction hierarchy with: {} edges from: {} for: {}ms",
+            m, path, System.currentTimeMillis() - startTime);
+        return ch;
+    }
+
+    private static ByteBuffer slice(MappedByteBuffer file, int position, int length) {
+        return file.slice(position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
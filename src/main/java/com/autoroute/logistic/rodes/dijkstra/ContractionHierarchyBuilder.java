@@ -0,0 +1,221 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.rodes.CsrGraph;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Contracts vertices one by one in order of priority: edge difference (shortcuts added - edges removed),
+ * contracted neighbours and level in the hierarchy, so contracted vertices are spread over the graph.
+ * Shortcut u-w over v is added only if a witness search from u without v doesn't find a path not longer than u-v-w.
+ * Witness search is limited by {@link #WITNESS_SETTLED_LIMIT}, so some shortcuts can be redundant, but never missing.
+ */
+final class ContractionHierarchyBuilder {
+
+    private static final Logger LOGGER = LogManager.getLogger(ContractionHierarchyBuilder.class);
+    private static final int WITNESS_SETTLED_LIMIT = 500;
+
+    private final CsrGraph g;
+    private final int n;
+    private final Adjacency[] adjacency;
+    private final int[] contractedNeighbours;
+    private final int[] levels;
+    private final DijkstraWorkspace witness;
+
+    ContractionHierarchyBuilder(CsrGraph g) {
+        this.g = g;
+        this.n = g.size();
+        this.adjacency = new Adjacency[n];
+        this.contractedNeighbours = new int[n];
+        this.levels = new int[n];
+        this.witness = new DijkstraWorkspace(n);
+        for (int v = 0; v < n; v++) {
+            adjacency[v] = new Adjacency(g.degree(v));
+        }
+        for (int v = 0; v < n; v++) {
+            for (int e = g.edgesStart(v); e < g.edgesEnd(v); e++) {
+                final int u = g.target(e);
+                if (u != v) {
+                    adjacency[v].addOrDecrease(u, g.weight(e), -1);
+                }
+            }
+        }
+    }
+
+    ContractionHierarchy build() {
+        final long startTime = System.currentTimeMillis();
+        IndexedMinHeap queue = new IndexedMinHeap(n);
+        for (int v = 0; v < n; v++) {
+            queue.push(v, priority(v));
+        }
+
+        int[] ranks = new int[n];
+        Adjacency[] upward = new Adjacency[n];
+        int rank = 0;
+        int shortcuts = 0;
+        while (!queue.isEmpty()) {
+            final int v = queue.pop();
+            // lazy update: priorities of not neighbours can be outdated
+            final double newPriority = priority(v);
+            if (!queue.isEmpty() && newPriority > queue.minKey()) {
+                queue.push(v, newPriority);
+                continue;
+            }
+            shortcuts += contract(v, true);
+            ranks[v] = rank++;
+            upward[v] = adjacency[v];
+            final Adjacency vAdjacency = adjacency[v];
+            for (int i = 0; i < vAdjacency.size; i++) {
+                final int u = vAdjacency.targets[i];
+                adjacency[u].remove(v);
+                contractedNeighbours[u]++;
+                levels[u] = Math.max(levels[u], levels[v] + 1);
+            }
+            if (rank % 100000 == 0) {
+                LOGGER.info("contracted: {}/{} vertices, shortcuts: {}", rank, n, shortcuts);
+            }
+        }
+
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + upward[v].size;
+        }
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        int[] middles = new int[offsets[n]];
+        for (int v = 0; v < n; v++) {
+            final Adjacency a = upward[v];
+            System.arraycopy(a.targets, 0, targets, offsets[v], a.size);
+            System.arraycopy(a.weights, 0, weights, offsets[v], a.size);
+            System.arraycopy(a.middles, 0, middles, offsets[v], a.size);
+        }
+        LOGGER.info("built contraction hierarchy for: {} vertices, shortcuts: {}, took: {}ms",
+            n, shortcuts, System.currentTimeMillis() - startTime);
+        return new ContractionHierarchy(IntBuffer.wrap(ranks), IntBuffer.wrap(offsets), IntBuffer.wrap(targets),
+            DoubleBuffer.wrap(weights), IntBuffer.wrap(middles), g.edgesCount(), g.checksum());
+    }
+
+    private double priority(int v) {
+        return 2 * (contract(v, false) - adjacency[v].size) + contractedNeighbours[v] + levels[v];
+    }
+
+    /**
+     * @return number of shortcuts which are needed to contract v, they are added if addShortcuts.
+     */
+    private int contract(int v, boolean addShortcuts) {
+        final Adjacency a = adjacency[v];
+        int shortcuts = 0;
+        for (int i = 0; i < a.size; i++) {
+            final int u = a.targets[i];
+            double maxDistance = 0;
+            for (int j = 0; j < a.size; j++) {
+                if (j != i) {
+                    maxDistance = Math.max(maxDistance, a.weights[i] + a.weights[j]);
+                }
+            }
+            if (maxDistance == 0) {
+                continue;
+            }
+            witnessSearch(u, v, maxDistance);
+            // every pair u-w is checked from both sides, shortcut is added by the smaller id
+            for (int j = 0; j < a.size; j++) {
+                final int w = a.targets[j];
+                if (j == i || w < u) {
+                    continue;
+                }
+                final double viaV = a.weights[i] + a.weights[j];
+                if (witness.distance(w) > viaV) {
+                    shortcuts++;
+                    if (addShortcuts) {
+                        adjacency[u].addOrDecrease(w, viaV, v);
+                        adjacency[w].addOrDecrease(u, viaV, v);
+                    }
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    private void witnessSearch(int from, int ignore, double maxDistance) {
+        witness.reset();
+        final IndexedMinHeap heap = witness.heap();
+        witness.set(from, 0, -1);
+        heap.push(from, 0);
+        int settled = 0;
+        while (!heap.isEmpty() && settled < WITNESS_SETTLED_LIMIT) {
+            final int x = heap.pop();
+            final double d = witness.distance(x);
+            if (d > maxDistance) {
+                break;
+            }
+            settled++;
+            final Adjacency a = adjacency[x];
+            for (int i = 0; i < a.size; i++) {
+                final int y = a.targets[i];
+                if (y == ignore) {
+                    continue;
+                }
+                final double newDistance = d + a.weights[i];
+                if (newDistance < witness.distance(y)) {
+                    witness.set(y, newDistance, x);
+                    heap.push(y, newDistance);
+                }
+            }
+        }
+    }
+
+    /**
+     * Edges of a not contracted vertex: original edges (middle = -1) and shortcuts over middle vertex.
+     */
+    private static final class Adjacency {
+
+        private int[] targets;
+        private double[] weights;
+        private int[] middles;
+        private int size = 0;
+
+        Adjacency(int capacity) {
+            capacity = Math.max(capacity, 2);
+            this.targets = new int[capacity];
+            this.weights = new double[capacity];
+            this.middles = new int[capacity];
+        }
+
+        void addOrDecrease(int target, double weight, int middle) {
+            for (int i = 0; i < size; i++) {
+                if (targets[i] == target) {
+                    if (weight < weights[i]) {
+                        weights[i] = weight;
+                        middles[i] = middle;
+                    }
+                    return;
+                }
+            }
+            if (size == targets.length) {
+                targets = Arrays.copyOf(targets, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+                middles = Arrays.copyOf(middles, size * 2);
+            }
+            targets[size] = target;
+            weights[size] = weight;
+            middles[size] = middle;
+            size++;
+        }
+
+        void remove(int target) {
+            for (int i = 0; i < size; i++) {
+                if (targets[i] == target) {
+                    size--;
+                    targets[i] = targets[size];
+                    weights[i] = weights[size];
+                    middles[i] = middles[size];
+                    return;
+                }
+            }
+        }
+    }
+}
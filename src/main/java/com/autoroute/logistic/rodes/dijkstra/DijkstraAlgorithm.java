@@ -1,107 +1,258 @@
 package com.autoroute.logistic.rodes.dijkstra;
 
+import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.rodes.CsrGraph;
 import com.autoroute.logistic.rodes.Graph;
 import com.autoroute.logistic.rodes.Vertex;
-import com.autoroute.logistic.LatLon;
-import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
-import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.TreeSet;
 
+/**
+ * Dijkstra (A* if finish is known) over {@link CsrGraph} of the full graph, state is kept by vertex ids.
+ * Single-source run owns its arrays, point-to-point runs use the given {@link SearchWorkspace},
+ * so their result is valid until the next point-to-point run with the workspace.
+ * Threads can share the result of a single-source run: {@link #getDistance} and {@link #getRouteFromFullGraph}
+ * don't write into the algorithm.
+ * If the full graph has {@link ContractionHierarchy}, point-to-point runs use it by default.
+ * Bidirectional runs use average potentials (h(v, finish) - h(v, start)) / 2, so both sides have consistent keys
+ * and the search stops when the sum of the minimal keys is not less than the best found path.
+ * A* heuristic is a lower bound in km: max of {@link Landmarks} bound and straight-line distance.
+ */
 public class DijkstraAlgorithm {
 
     private static final Logger LOGGER = LogManager.getLogger(DijkstraAlgorithm.class);
+    // straight-line distance is a bit approximate, so it's decreased to stay below the real distance
+    private static final double GEO_LOWER_BOUND_FACTOR = 0.99;
 
     private final Graph fullGraph;
-    private final Long2DoubleOpenHashMap distances;
-    private final Long2ObjectOpenHashMap<Vertex> prev;
+    private final CsrGraph csrGraph;
+    @Nullable
+    private final Landmarks landmarks;
     private final DijkstraCache dijkstraCache;
     private final Vertex startVertex;
+    private final int startId;
+    private final SearchWorkspace searchWorkspace;
+    private DijkstraWorkspace workspace = null;
+    private int epoch = -1;
+    // result of bidirectional and contraction hierarchy runs
+    @Nullable
+    private int[] path = null;
+    private int settled = 0;
+    // the route of the last point-to-point run found in the cache, it's the view of the search workspace
+    @Nullable
+    private PathView cachedPath = null;
+    // finish of the last point-to-point run which wasn't in the cache, getPath to it doesn't ask the cache again
+    @Nullable
+    private Vertex missedFinish = null;
+    // single-source run settles only vertices within the distance
+    private double maxDistance = Double.POSITIVE_INFINITY;
 
+    /**
+     * Point-to-point runs of this algorithm allocate their own workspace.
+     */
     public DijkstraAlgorithm(Graph fullGraph, Vertex startVertex) {
+        this(fullGraph, startVertex, new SearchWorkspace(fullGraph));
+    }
+
+    public DijkstraAlgorithm(Graph fullGraph, Vertex startVertex, SearchWorkspace searchWorkspace) {
         assert fullGraph.isFullGraph();
+        assert searchWorkspace.fullGraph() == fullGraph;
         this.fullGraph = fullGraph;
-        this.distances = new Long2DoubleOpenHashMap();
-        this.prev = new Long2ObjectOpenHashMap<>();
-        this.dijkstraCache = DijkstraCache.getCache();
+        this.searchWorkspace = searchWorkspace;
+        this.csrGraph = fullGraph.getCsrGraph();
+        this.landmarks = fullGraph.getLandmarks();
+        this.dijkstraCache = fullGraph.getDijkstraCache();
         this.startVertex = startVertex;
+        // startVertex can be from compact graph, ids there are different
+        this.startId = fullGraph.findByIdentificator(startVertex.getIdentificator()).getId();
     }
 
     public void run() {
         run(null);
     }
 
+    /**
+     * Single-source run which stops when the frontier passes maxDistanceKM,
+     * farther vertices have {@link Double#POSITIVE_INFINITY} distance.
+     */
+    public void runWithin(double maxDistanceKM) {
+        assert maxDistanceKM >= 0;
+        maxDistance = maxDistanceKM;
+        search(null);
+    }
+
     public void run(@Nullable Vertex finish) {
+        final SearchMode mode = finish != null && fullGraph.getContractionHierarchy() != null
+            ? SearchMode.CONTRACTION_HIERARCHY
+            : SearchMode.UNIDIRECTIONAL;
+        run(finish, mode);
+    }
+
+    public void run(@Nullable Vertex finish, SearchMode mode) {
+        path = null;
+        cachedPath = null;
+        missedFinish = null;
+        maxDistance = Double.POSITIVE_INFINITY;
         if (finish != null) {
             DijkstraCache.Pair p = new DijkstraCache.Pair(startVertex.getIdentificator(), finish.getIdentificator());
-            if (dijkstraCache.get(p) != null) {
+            final PathView view = searchWorkspace.clearView();
+            if (dijkstraCache.get(p, view.ids())) {
+                cachedPath = view;
                 return;
             }
+            missedFinish = finish;
         }
-        distances.put(startVertex.getIdentificator(), 0d);
+        switch (mode) {
+            case UNIDIRECTIONAL -> search(finish);
+            case BIDIRECTIONAL -> {
+                assert finish != null;
+                searchBidirectional(finish);
+                if (path == null) {
+                    search(finish);
+                }
+            }
+            case CONTRACTION_HIERARCHY -> {
+                assert finish != null;
+                final ContractionHierarchy ch = fullGraph.getContractionHierarchy();
+                assert ch != null;
+                final ContractionHierarchy.Query query = ch.query(searchWorkspace);
+                path = query.findPath(startId, toId(finish));
+                settled = query.settled();
+                fullGraph.getDijkstraStats().addQuery(settled);
+                if (path == null) {
+                    search(finish);
+                }
+            }
+        }
+    }
 
-        TreeSet<DijNode> queue = new TreeSet<>();
-        queue.add(new DijNode(startVertex.getIdentificator(),
-            distances.get(startVertex.getIdentificator()),
-            distances.get(startVertex.getIdentificator())));
+    private void search(@Nullable Vertex finish) {
+        workspace = finish == null
+            ? new DijkstraWorkspace(csrGraph.size())
+            : searchWorkspace.forward();
+        epoch = workspace.reset();
+        final int finishId = finish == null ? -1 : toId(finish);
 
-        while (!queue.isEmpty()) {
-            if (!dijkstraIteration(finish, queue)) {
+        final IndexedMinHeap heap = workspace.heap();
+        workspace.set(startId, 0, -1);
+        heap.push(startId, 0);
+        settled = 0;
+        while (!heap.isEmpty()) {
+            if (finishId == -1 && heap.minKey() > maxDistance) {
                 break;
             }
+            final int v = heap.pop();
+            settled++;
+            if (v == finishId) {
+                break;
+            }
+            final double distanceToV = workspace.distance(v);
+            for (int e = csrGraph.edgesStart(v); e < csrGraph.edgesEnd(v); e++) {
+                final int u = csrGraph.target(e);
+                final double d = distanceToV + csrGraph.weight(e);
+                if (d < workspace.distance(u)) {
+                    workspace.set(u, d, v);
+                    heap.push(u, finishId == -1 ? d : d + lowerBound(u, finishId));
+                }
+            }
         }
-        if (finish == null) {
-            for (Long2DoubleMap.Entry entry : distances.long2DoubleEntrySet()) {
-                assert entry.getDoubleValue() != Double.MAX_VALUE;
+        fullGraph.getDijkstraStats().addQuery(settled);
+        if (finish == null && maxDistance == Double.POSITIVE_INFINITY) {
+            for (int v = 0; v < csrGraph.size(); v++) {
+                assert workspace.isReached(v);
             }
         }
     }
 
-    private boolean dijkstraIteration(@Nullable Vertex finish, TreeSet<DijNode> queue) {
-        final DijNode node = queue.pollFirst();
-        assert node != null;
-        Vertex v = fullGraph.findByIdentificator(node.identificator);
+    private void searchBidirectional(Vertex finish) {
+        final int finishId = toId(finish);
+        final DijkstraWorkspace forward = searchWorkspace.forward();
+        final DijkstraWorkspace backward = searchWorkspace.backward();
+        // distances of forward side are not complete, getDistance can't use them
+        workspace = null;
+        forward.reset();
+        backward.reset();
+        settled = 0;
+        if (startId == finishId) {
+            path = new int[]{startId};
+            return;
+        }
 
-        for (Vertex u : v.getNeighbors()) {
-            assert u.containsNeighbor(v);
-            double distanceToU = distances.get(u.getIdentificator());
-            if (distanceToU == 0 && u.getIdentificator() != startVertex.getIdentificator()) {
-                distanceToU = Integer.MAX_VALUE;
+        final IndexedMinHeap forwardHeap = forward.heap();
+        final IndexedMinHeap backwardHeap = backward.heap();
+        forward.set(startId, 0, -1);
+        forwardHeap.push(startId, potential(startId, finishId));
+        backward.set(finishId, 0, -1);
+        backwardHeap.push(finishId, -potential(finishId, finishId));
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (!forwardHeap.isEmpty() && !backwardHeap.isEmpty()) {
+            if (forwardHeap.minKey() + backwardHeap.minKey() >= best) {
+                break;
             }
-            final DijNode uNode = new DijNode(u.getIdentificator(), distanceToU, calculateCost(finish, u));
-            final double distanceToV = distances.get(v.getIdentificator());
-            double d = distanceToV + v.getDistance(u);
-            if (d < distanceToU) {
-                queue.remove(uNode);
-                distances.put(u.getIdentificator(), d);
-                if (prev.get(v.getIdentificator()) != null) {
-                    // to be sure we don't have cycle prevs
-                    assert prev.get(v.getIdentificator()).getIdentificator() != u.getIdentificator();
-                }
-                prev.put(u.getIdentificator(), v);
-                queue.add(new DijNode(u.getIdentificator(), d, calculateCost(finish, u)));
-                if (finish != null && u.getIdentificator() == finish.getIdentificator()) {
-                    return false;
+            final boolean isForward = forwardHeap.size() <= backwardHeap.size();
+            final DijkstraWorkspace current = isForward ? forward : backward;
+            final DijkstraWorkspace other = isForward ? backward : forward;
+            final int v = current.heap().pop();
+            settled++;
+            final double distanceToV = current.distance(v);
+            for (int e = csrGraph.edgesStart(v); e < csrGraph.edgesEnd(v); e++) {
+                final int u = csrGraph.target(e);
+                final double d = distanceToV + csrGraph.weight(e);
+                if (d < current.distance(u)) {
+                    current.set(u, d, v);
+                    final double p = potential(u, finishId);
+                    current.heap().push(u, isForward ? d + p : d - p);
+                    if (other.isReached(u) && d + other.distance(u) < best) {
+                        best = d + other.distance(u);
+                        meet = u;
+                    }
                 }
             }
         }
-        return true;
-    }
+        fullGraph.getDijkstraStats().addQuery(settled);
+        if (meet == -1) {
+            return;
+        }
 
-    private double calculateCost(@Nullable Vertex finish, Vertex u) {
-        double cost = distances.get(u.getIdentificator());
-        if (finish != null) {
-            cost += LatLon.fastDistance(u.getLatLon(), finish.getLatLon());
+        IntArrayList ids = new IntArrayList();
+        for (int v = meet; v != -1; v = forward.prev(v)) {
+            ids.add(v);
+        }
+        PathCodec.reverse(ids, 0);
+        for (int v = backward.prev(meet); v != -1; v = backward.prev(v)) {
+            ids.add(v);
         }
-        return cost;
+        path = ids.toIntArray();
+    }
+
+    private double potential(int v, int finishId) {
+        return (lowerBound(v, finishId) - lowerBound(v, startId)) / 2;
+    }
+
+    private double lowerBound(int v, int finishId) {
+        final double geoDistance = GEO_LOWER_BOUND_FACTOR * LatLon.distanceKM(
+            csrGraph.lat(v), csrGraph.lon(v), csrGraph.lat(finishId), csrGraph.lon(finishId));
+        return landmarks == null ? geoDistance : Math.max(geoDistance, landmarks.lowerBound(v, finishId));
+    }
+
+    /**
+     * @return number of vertices settled by the last search.
+     */
+    public int getSettledCount() {
+        return settled;
+    }
+
+    private int toId(Vertex v) {
+        return fullGraph.findByIdentificator(v.getIdentificator()).getId();
+    }
+
+    private boolean hasResult() {
+        return workspace != null && workspace.epoch() == epoch;
     }
 
     public void assertStartVertex(Vertex v) {
@@ -109,68 +260,85 @@ public class DijkstraAlgorithm {
     }
 
     public double getDistance(Vertex u) {
-        assert distances != null;
-        assert prev != null;
-        return distances.get(u.getIdentificator());
+        assert hasResult();
+        final double distance = workspace.distance(toId(u));
+        return distance <= maxDistance ? distance : Double.POSITIVE_INFINITY;
+    }
+
+    public double getMaxDistance() {
+        return maxDistance;
     }
 
     public List<Vertex> getRouteFromFullGraph(Vertex u) {
-        DijkstraCache.Pair p = new DijkstraCache.Pair(startVertex.getIdentificator(), u.getIdentificator());
-        List<Vertex> cacheResult = dijkstraCache.get(p);
-        if (cacheResult != null) {
-            assert cacheResult.get(0).getIdentificator() == startVertex.getIdentificator();
-            assert cacheResult.get(cacheResult.size() - 1).getIdentificator() == u.getIdentificator();
-            return new ArrayList<>(cacheResult);
+        return getPath(u, new PathView(fullGraph)).toList();
+    }
+
+    /**
+     * Route from the start to u, a hit of the cache doesn't allocate.
+     *
+     * @return the view of the workspace, valid until the next getPath with the workspace.
+     */
+    public PathView getPath(Vertex u) {
+        if (isCachedPath(u)) {
+            return cachedPath;
         }
+        return getPath(u, searchWorkspace.clearView());
+    }
 
+    private PathView getPath(Vertex u, PathView view) {
+        if (isCachedPath(u)) {
+            assert cachedPath != view;
+            view.ids().addAll(cachedPath.ids());
+            return view;
+        }
+        DijkstraCache.Pair p = new DijkstraCache.Pair(startVertex.getIdentificator(), u.getIdentificator());
+        final IntArrayList ids = view.ids();
+        if (missedFinish != u && dijkstraCache.get(p, ids)) {
+            assert view.first().getIdentificator() == startVertex.getIdentificator();
+            assert view.last().getIdentificator() == u.getIdentificator();
+            return view;
+        }
         final Vertex newU = fullGraph.findByIdentificator(u.getIdentificator());
         assert u.getIdentificator() == newU.getIdentificator();
         u = newU;
 
-        List<Vertex> route = new ArrayList<>();
-        Vertex k = u;
-        while (true) {
-            route.add(k);
-            assert this.prev != null;
-            Vertex nextVertex = prev.get(k.getIdentificator());
-            if (nextVertex == null) {
-                break;
+        final int[] path = this.path;
+        if (path != null && path[path.length - 1] == u.getId()) {
+            ids.addElements(0, path);
+        } else {
+            if (hasResult() && getDistance(u) == Double.POSITIVE_INFINITY) {
+                // u is farther than maxDistance of single-source run, its result must be kept.
+                // threads can share the single-source run, so the search has its own workspace
+                final DijkstraAlgorithm pointToPoint = new DijkstraAlgorithm(fullGraph, startVertex);
+                pointToPoint.run(u, SearchMode.fastest(fullGraph));
+                return pointToPoint.getPath(u, view);
             }
-            assert nextVertex.getNeighbors().contains(k);
-            assert k.getNeighbors().contains(nextVertex);
-            k = nextVertex;
-        }
-        Collections.reverse(route);
-        assert route.get(0).getIdentificator() == startVertex.getIdentificator();
-        assert route.get(route.size() - 1).getIdentificator() == u.getIdentificator();
-
-        dijkstraCache.put(p, Collections.unmodifiableList(route));
-        return new ArrayList<>(route);
-    }
-
-    private record DijNode(long identificator, double distance, double heuristicCost) implements Comparable<DijNode> {
-
-        @Override
-        public int compareTo(@NotNull DijNode o) {
-            if (heuristicCost == o.heuristicCost) {
-                return Long.compare(identificator, o.identificator);
+            if (!hasResult()) {
+                // the search workspace was reused by another search
+                search(u);
+            }
+            int k = u.getId();
+            while (k != -1) {
+                ids.add(k);
+                final int next = workspace.prev(k);
+                assert next == -1 || csrGraph.findEdge(next, k) != -1;
+                k = next;
             }
-            return Double.compare(heuristicCost, o.heuristicCost);
+            PathCodec.reverse(ids, 0);
         }
+        assert view.first().getIdentificator() == startVertex.getIdentificator();
+        assert view.last().getIdentificator() == u.getIdentificator();
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            DijNode dijNode = (DijNode) o;
-
-            return identificator == dijNode.identificator;
-        }
+        dijkstraCache.put(p, ids);
+        return view;
+    }
 
-        @Override
-        public int hashCode() {
-            return Long.hashCode(identificator);
-        }
+    /**
+     * @return true if the last run took the route to u from the cache and the view still keeps it.
+     */
+    private boolean isCachedPath(Vertex u) {
+        return cachedPath != null && cachedPath.size() > 0
+            && cachedPath.first().getIdentificator() == startVertex.getIdentificator()
+            && cachedPath.last().getIdentificator() == u.getIdentificator();
     }
 }
@@ -2,70 +2,256 @@ package com.autoroute.logistic.rodes.dijkstra;
 
 import com.autoroute.logistic.rodes.Graph;
 import com.autoroute.logistic.rodes.Vertex;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Routes between pairs of vertices by identificators. The graph is undirected, so (v, u) and (u, v) are one entry:
+ * the path is stored from the smaller identificator and reversed on get if needed.
+ * Paths are kept compressed by {@link PathCodec} and are decoded to ids given by the caller, so a hit doesn't allocate.
+ * Entries are split into stripes by hash, every stripe is an LRU map with its own lock and its part of the bounds.
+ * If there is no entry for a pair, but both vertices are on one cached path, the route is its slice ({@link SubpathIndex}).
+ * The bound of bytes covers the index too: it's allocated up front and the rest is left for paths.
+ * The cache belongs to the full graph, so concurrent requests which share the graph by
+ * {@link com.autoroute.logistic.rodes.GraphRegistry} share the cache too.
+ */
 public class DijkstraCache {
 
-    private static final Logger LOGGER = LogManager.getLogger(DijkstraCache.class);
-    private static DijkstraCache CACHE;
+    private static final int STRIPES = 16;
+    static final int DEFAULT_MAX_ENTRIES = 1_000_000;
+    static final long DEFAULT_MAX_BYTES = 256L << 20;
+    // requests with different graphs can run at once, every graph has its own cache
+    private static final int MAX_HEAP_PART = 8;
+    // Pair, map entry, CachedPath, array header and the slot in the table of paths of the index
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
 
-    public static void createCache(Graph fullGraph) {
-        CACHE = new DijkstraCache(fullGraph);
+    /**
+     * Creates a cache for searches over the full graph and attaches it to the graph.
+     */
+    public static DijkstraCache createCache(Graph fullGraph) {
+        return createCache(fullGraph, DEFAULT_MAX_ENTRIES, defaultMaxBytes());
     }
 
-    // instead of List<Vertex> for memory saving
-    private final Map<Pair, int[]> cache = new HashMap<>();
+    public static DijkstraCache createCache(Graph fullGraph, int maxEntries, long maxBytes) {
+        final DijkstraCache cache = new DijkstraCache(fullGraph, maxEntries, maxBytes);
+        fullGraph.setDijkstraCache(cache);
+        return cache;
+    }
+
+    public static long defaultMaxBytes() {
+        return Math.min(DEFAULT_MAX_BYTES, Runtime.getRuntime().maxMemory() / MAX_HEAP_PART);
+    }
+
+    private final Stripe[] stripes;
     private final Graph fullGraph;
-    private int hit = 0;
-    private int miss = 0;
+    private final SubpathIndex subpathIndex;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder subpathHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong bytes = new AtomicLong();
 
-    private DijkstraCache(Graph fullGraph) {
+    private DijkstraCache(Graph fullGraph, int maxEntries, long maxBytes) {
+        assert maxEntries > 0 && maxBytes > 0;
         this.fullGraph = fullGraph;
+        this.subpathIndex = new SubpathIndex(fullGraph.size(), SubpathIndex.slotsPerVertex(fullGraph.size(), maxBytes));
+        final long indexBytes = subpathIndex.memoryBytes();
+        bytes.addAndGet(indexBytes);
+        final long pathsMaxBytes = Math.max(1, maxBytes - indexBytes);
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(Math.max(1, maxEntries / STRIPES), Math.max(1, pathsMaxBytes / STRIPES));
+        }
     }
 
-    public static DijkstraCache getCache() {
-        return CACHE;
+    /**
+     * Appends ids of the full graph vertices of the route from p.v to p.u to ids.
+     *
+     * @return false if there is no route in the cache.
+     */
+    public boolean get(Pair p, IntArrayList ids) {
+        final Pair key = p.normalized();
+        final SubpathIndex.CachedPath cached;
+        final Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            cached = stripe.map.get(key);
+        }
+        if (cached == null) {
+            if (!subpathIndex.find(toId(p.v()), toId(p.u()), ids)) {
+                misses.increment();
+                return false;
+            }
+            subpathHits.increment();
+            return true;
+        }
+        hits.increment();
+        final int from = ids.size();
+        PathCodec.decode(cached.data, cached.length, ids);
+        if (key != p) {
+            PathCodec.reverse(ids, from);
+        }
+        return true;
     }
 
-    public List<Vertex> get(Pair p) {
-        var cacheResult = cache.get(p);
-        if (cacheResult != null) {
-            hit++;
-            if (hit % 50000 == 0) {
-                LOGGER.info("cache hit: {} miss: {}", hit, miss);
+    /**
+     * The same as get, but doesn't decode the route and doesn't change stats & order of eviction.
+     */
+    public boolean contains(Pair p) {
+        final Pair key = p.normalized();
+        final Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            if (stripe.map.containsKey(key)) {
+                return true;
             }
-            List<Vertex> l = new ArrayList<>(cacheResult.length);
-            for (int id : cacheResult) {
-                Vertex v = fullGraph.getVertexById(id);
-                l.add(v);
-            }
-            return l;
-        } else {
-            return null;
         }
+        return subpathIndex.contains(toId(p.v()), toId(p.u()));
+    }
+
+    private int toId(long identificator) {
+        return fullGraph.findByIdentificator(identificator).getId();
     }
 
     public void put(Pair p, List<Vertex> list) {
-        int[] arrayOfIds = list.stream()
-            .mapToInt(Vertex::getId)
-            .toArray();
-        cache.put(p, arrayOfIds);
-        miss++;
-        if (miss % 50000 == 0) {
-            LOGGER.info("cache hit: {} miss: {}", hit, miss);
+        final IntArrayList ids = new IntArrayList(list.size());
+        for (Vertex v : list) {
+            ids.add(v.getId());
         }
+        put(p, ids);
     }
 
-    public record Pair(long v, long u) {
+    /**
+     * @param ids of the full graph vertices of the route from p.v to p.u, they are the same after the call.
+     */
+    public void put(Pair p, IntArrayList ids) {
+        final Pair key = p.normalized();
+        // paths are stored from the smaller identificator
+        final boolean reversed = key != p;
+        if (reversed) {
+            PathCodec.reverse(ids, 0);
+        }
+        try {
+            final SubpathIndex.CachedPath path = new SubpathIndex.CachedPath(ids);
+            final Stripe stripe = stripe(key);
+            synchronized (stripe) {
+                final SubpathIndex.CachedPath old = stripe.map.put(key, path);
+                if (old != null) {
+                    stripe.remove(old);
+                }
+                stripe.add(path);
+                stripe.evict();
+            }
+            // path of 2 vertices has no other parts
+            if (ids.size() > 2) {
+                subpathIndex.add(path, ids);
+            }
+        } finally {
+            if (reversed) {
+                PathCodec.reverse(ids, 0);
+            }
+        }
+    }
 
+    private Stripe stripe(Pair key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return stripes[h & (STRIPES - 1)];
     }
 
-}
+    private static long sizeInBytes(SubpathIndex.CachedPath path) {
+        return ENTRY_OVERHEAD_BYTES + path.data.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of queries which were answered by a part of a cached path.
+     */
+    public long getSubpathHits() {
+        return subpathHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return bytes of cached paths and of the subpath index.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    SubpathIndex getSubpathIndex() {
+        return subpathIndex;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.map.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "entries: " + size() + ", bytes: " + getBytes() + ", hits: " + getHits() +
+            ", subpath hits: " + getSubpathHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions();
+    }
+
+    private final class Stripe {
+
+        private final LinkedHashMap<Pair, SubpathIndex.CachedPath> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maxEntries;
+        private final long maxBytes;
+        private long stripeBytes = 0;
+
+        Stripe(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        void add(SubpathIndex.CachedPath path) {
+            stripeBytes += sizeInBytes(path);
+            bytes.addAndGet(sizeInBytes(path));
+        }
+
+        void remove(SubpathIndex.CachedPath path) {
+            subpathIndex.remove(path);
+            stripeBytes -= sizeInBytes(path);
+            bytes.addAndGet(-sizeInBytes(path));
+        }
+
+        // the newest entry is kept even if it is bigger than the stripe
+        void evict() {
+            final Iterator<Map.Entry<Pair, SubpathIndex.CachedPath>> it = map.entrySet().iterator();
+            while (map.size() > 1 && (map.size() > maxEntries || stripeBytes > maxBytes)) {
+                remove(it.next().getValue());
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
 
+    public record Pair(long v, long u) {
 
+        Pair normalized() {
+            return v <= u ? this : new Pair(u, v);
+        }
+    }
+
+}
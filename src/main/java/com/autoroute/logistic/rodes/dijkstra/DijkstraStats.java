@@ -0,0 +1,32 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of searches over the full graph, shared by all threads.
+ */
+public class DijkstraStats {
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder settled = new LongAdder();
+
+    void addQuery(long settledVertices) {
+        queries.increment();
+        settled.add(settledVertices);
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public long getSettled() {
+        return settled.sum();
+    }
+
+    @Override
+    public String toString() {
+        final long q = getQueries();
+        final long s = getSettled();
+        return "queries: " + q + ", settled: " + s + ", settled per query: " + (q == 0 ? 0 : s / q);
+    }
+}
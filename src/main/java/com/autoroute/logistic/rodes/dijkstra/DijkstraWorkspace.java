@@ -0,0 +1,66 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import java.util.Arrays;
+
+/**
+ * Distances, parents and heap of one search by full graph ids. Arrays are reset by incrementing epoch:
+ * a value is valid only if its stamp equals to the current epoch.
+ */
+final class DijkstraWorkspace {
+
+    private final double[] distances;
+    private final int[] prev;
+    private final int[] stamps;
+    private final IndexedMinHeap heap;
+    private int epoch = 0;
+
+    DijkstraWorkspace(int size) {
+        this.distances = new double[size];
+        this.prev = new int[size];
+        this.stamps = new int[size];
+        this.heap = new IndexedMinHeap(size);
+    }
+
+    int size() {
+        return stamps.length;
+    }
+
+    /**
+     * @return epoch of the new search.
+     */
+    int reset() {
+        epoch++;
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+        heap.clear();
+        return epoch;
+    }
+
+    int epoch() {
+        return epoch;
+    }
+
+    IndexedMinHeap heap() {
+        return heap;
+    }
+
+    boolean isReached(int v) {
+        return stamps[v] == epoch;
+    }
+
+    double distance(int v) {
+        return stamps[v] == epoch ? distances[v] : Double.POSITIVE_INFINITY;
+    }
+
+    int prev(int v) {
+        return stamps[v] == epoch ? prev[v] : -1;
+    }
+
+    void set(int v, double distance, int prevV) {
+        stamps[v] = epoch;
+        distances[v] = distance;
+        prev[v] = prevV;
+    }
+}
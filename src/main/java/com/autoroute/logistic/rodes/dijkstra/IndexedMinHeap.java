@@ -0,0 +1,129 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import java.util.Arrays;
+
+/**
+ * 4-ary min-heap over int ids [0, capacity) with decrease-key. Doesn't allocate after creation.
+ */
+final class IndexedMinHeap {
+
+    private static final int ARITY = 4;
+
+    private final int[] heap;
+    private final int[] positions; // position of id in heap or -1
+    private final double[] keys;
+    private int size = 0;
+
+    IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        this.keys = new double[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int id) {
+        return positions[id] != -1;
+    }
+
+    double minKey() {
+        assert size > 0;
+        return keys[heap[0]];
+    }
+
+    int peek() {
+        assert size > 0;
+        return heap[0];
+    }
+
+    /**
+     * Inserts id or decreases its key if it's already in the heap.
+     */
+    void push(int id, double key) {
+        int position = positions[id];
+        if (position == -1) {
+            position = size++;
+            heap[position] = id;
+            positions[id] = position;
+        } else if (key >= keys[id]) {
+            return;
+        }
+        keys[id] = key;
+        siftUp(position);
+    }
+
+    int pop() {
+        assert size > 0;
+        final int min = heap[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            final int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position) {
+        final int id = heap[position];
+        final double key = keys[id];
+        while (position > 0) {
+            final int parentPosition = (position - 1) / ARITY;
+            final int parent = heap[parentPosition];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+
+    private void siftDown(int position) {
+        final int id = heap[position];
+        final double key = keys[id];
+        while (true) {
+            final int firstChild = position * ARITY + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            final int lastChild = Math.min(firstChild + ARITY, size);
+            int minChildPosition = firstChild;
+            double minChildKey = keys[heap[firstChild]];
+            for (int c = firstChild + 1; c < lastChild; c++) {
+                final double childKey = keys[heap[c]];
+                if (childKey < minChildKey) {
+                    minChildKey = childKey;
+                    minChildPosition = c;
+                }
+            }
+            if (minChildKey >= key) {
+                break;
+            }
+            final int child = heap[minChildPosition];
+            heap[position] = child;
+            positions[child] = position;
+            position = minChildPosition;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+}
@@ -0,0 +1,118 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.rodes.CsrGraph;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+
+/**
+ * Landmarks for ALT (A*, landmarks, triangle inequality): distances from every landmark to every vertex.
+ * For any landmark L: d(v, t) >= |d(L, v) - d(L, t)|, so the maximum over landmarks is an admissible
+ * and consistent heuristic. Landmarks are chosen by farthest selection: the next landmark is the vertex
+ * farthest from all already chosen ones.
+ */
+public class Landmarks {
+
+    private static final Logger LOGGER = LogManager.getLogger(Landmarks.class);
+
+    public static final int DEFAULT_COUNT = 8;
+    // distances are stored as floats, so the bound is decreased a bit to stay admissible after rounding
+    private static final double ROUNDING_FACTOR = 0.9999;
+
+    private final int count;
+    private final int[] landmarks;
+    private final float[] distances; // [v * count + i] - distance from i-th landmark to v
+
+    private Landmarks(int[] landmarks, float[] distances) {
+        this.count = landmarks.length;
+        this.landmarks = landmarks;
+        this.distances = distances;
+    }
+
+    public static Landmarks build(CsrGraph g, int count) {
+        final long startTime = System.currentTimeMillis();
+        final int n = g.size();
+        count = Math.min(count, n);
+        int[] landmarks = new int[count];
+        float[] distances = new float[n * count];
+        double[] minDistance = new double[n];
+        Arrays.fill(minDistance, Double.POSITIVE_INFINITY);
+        final DijkstraWorkspace workspace = new DijkstraWorkspace(n);
+
+        runDijkstra(g, 0, workspace);
+        int next = farthest(workspace, n);
+        for (int i = 0; i < count; i++) {
+            landmarks[i] = next;
+            runDijkstra(g, next, workspace);
+            for (int v = 0; v < n; v++) {
+                final double d = workspace.distance(v);
+                distances[v * count + i] = (float) d;
+                minDistance[v] = Math.min(minDistance[v], d);
+            }
+            next = 0;
+            for (int v = 1; v < n; v++) {
+                if (minDistance[v] != Double.POSITIVE_INFINITY && minDistance[v] > minDistance[next]) {
+                    next = v;
+                }
+            }
+        }
+        LOGGER.info("built: {} landmarks for: {} vertices, {} KB, took: {}ms",
+            count, n, 4L * distances.length / 1024, System.currentTimeMillis() - startTime);
+        return new Landmarks(landmarks, distances);
+    }
+
+    private static int farthest(DijkstraWorkspace workspace, int n) {
+        int farthest = 0;
+        for (int v = 1; v < n; v++) {
+            if (workspace.isReached(v) && workspace.distance(v) > workspace.distance(farthest)) {
+                farthest = v;
+            }
+        }
+        return farthest;
+    }
+
+    private static void runDijkstra(CsrGraph g, int source, DijkstraWorkspace workspace) {
+        workspace.reset();
+        final IndexedMinHeap heap = workspace.heap();
+        workspace.set(source, 0, -1);
+        heap.push(source, 0);
+        while (!heap.isEmpty()) {
+            final int v = heap.pop();
+            final double distanceToV = workspace.distance(v);
+            for (int e = g.edgesStart(v); e < g.edgesEnd(v); e++) {
+                final int u = g.target(e);
+                final double d = distanceToV + g.weight(e);
+                if (d < workspace.distance(u)) {
+                    workspace.set(u, d, v);
+                    heap.push(u, d);
+                }
+            }
+        }
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    /**
+     * @return lower bound of the distance between v and t.
+     */
+    public double lowerBound(int v, int t) {
+        final int vBase = v * count;
+        final int tBase = t * count;
+        float best = 0;
+        for (int i = 0; i < count; i++) {
+            final float diff = Math.abs(distances[vBase + i] - distances[tBase + i]);
+            // infinite for vertices which are not reachable from the landmark
+            if (diff > best && diff != Float.POSITIVE_INFINITY) {
+                best = diff;
+            }
+        }
+        return best * ROUNDING_FACTOR;
+    }
+}
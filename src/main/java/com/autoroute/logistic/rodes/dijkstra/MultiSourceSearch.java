@@ -0,0 +1,101 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.rodes.CsrGraph;
+import com.autoroute.logistic.rodes.Graph;
+import com.autoroute.logistic.rodes.Vertex;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One Dijkstra from many sources (all with distance 0) in the full graph which stops when all targets are settled.
+ * Every target gets the shortest path from the nearest source, so detours from a route to many points cost one search.
+ * The search keeps its workspace for next runs, so the result is valid until the next run.
+ */
+public class MultiSourceSearch {
+
+    private final Graph fullGraph;
+    private final CsrGraph csrGraph;
+    private DijkstraWorkspace workspace = null;
+    private int epoch = -1;
+    private int settled = 0;
+
+    public MultiSourceSearch(Graph fullGraph) {
+        assert fullGraph.isFullGraph();
+        this.fullGraph = fullGraph;
+        this.csrGraph = fullGraph.getCsrGraph();
+    }
+
+    /**
+     * @param sources ids of vertices in the full graph
+     * @param targets ids of vertices in the full graph
+     */
+    public void run(IntArrayList sources, IntArrayList targets) {
+        if (workspace == null) {
+            workspace = new DijkstraWorkspace(csrGraph.size());
+        }
+        epoch = workspace.reset();
+        final IndexedMinHeap heap = workspace.heap();
+        for (int i = 0; i < sources.size(); i++) {
+            final int source = sources.getInt(i);
+            workspace.set(source, 0, -1);
+            heap.push(source, 0);
+        }
+        // there are few targets, sorted array is enough to check a settled vertex
+        final int[] sortedTargets = targets.toIntArray();
+        Arrays.sort(sortedTargets);
+        int targetsLeft = 0;
+        for (int i = 0; i < sortedTargets.length; i++) {
+            if (i == 0 || sortedTargets[i] != sortedTargets[i - 1]) {
+                targetsLeft++;
+            }
+        }
+
+        settled = 0;
+        while (!heap.isEmpty() && targetsLeft > 0) {
+            final int v = heap.pop();
+            settled++;
+            if (Arrays.binarySearch(sortedTargets, v) >= 0) {
+                targetsLeft--;
+            }
+            final double distanceToV = workspace.distance(v);
+            for (int e = csrGraph.edgesStart(v); e < csrGraph.edgesEnd(v); e++) {
+                final int u = csrGraph.target(e);
+                final double d = distanceToV + csrGraph.weight(e);
+                if (d < workspace.distance(u)) {
+                    workspace.set(u, d, v);
+                    heap.push(u, d);
+                }
+            }
+        }
+        fullGraph.getDijkstraStats().addQuery(settled);
+    }
+
+    public int getSettledCount() {
+        return settled;
+    }
+
+    public double getDistance(int target) {
+        assert workspace.epoch() == epoch;
+        return workspace.distance(target);
+    }
+
+    /**
+     * @return path from the nearest source to the target, empty if the target wasn't reached.
+     */
+    public List<Vertex> getRoute(int target) {
+        assert workspace.epoch() == epoch;
+        List<Vertex> route = new ArrayList<>();
+        if (!workspace.isReached(target)) {
+            return route;
+        }
+        for (int k = target; k != -1; k = workspace.prev(k)) {
+            route.add(fullGraph.getVertexById(k));
+        }
+        Collections.reverse(route);
+        return route;
+    }
+}
@@ -0,0 +1,81 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Path of vertex ids as varints: the first id, then zigzag deltas between neighbours.
+ * Neighbours in a path usually have close ids, so most of deltas take 1-2 bytes instead of 4.
+ */
+final class PathCodec {
+
+    private PathCodec() {
+    }
+
+    private static final ThreadLocal<byte[][]> BUFFERS = ThreadLocal.withInitial(() -> new byte[][]{new byte[1024]});
+
+    static byte[] encode(int[] ids) {
+        return encode(IntArrayList.wrap(ids));
+    }
+
+    /**
+     * Only the result is allocated, varints are written to a buffer of the thread.
+     */
+    static byte[] encode(IntArrayList ids) {
+        final byte[][] holder = BUFFERS.get();
+        if (holder[0].length < 5 * ids.size()) {
+            holder[0] = new byte[Math.max(5 * ids.size(), 2 * holder[0].length)];
+        }
+        final byte[] buffer = holder[0];
+        int position = 0;
+        int prev = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            final int id = ids.getInt(i);
+            final int delta = id - prev;
+            position = writeVarint(buffer, position, (delta << 1) ^ (delta >> 31));
+            prev = id;
+        }
+        final byte[] result = new byte[position];
+        System.arraycopy(buffer, 0, result, 0, position);
+        return result;
+    }
+
+    /**
+     * Appends first count ids of the path to out.
+     */
+    static void decode(byte[] data, int count, IntArrayList out) {
+        int position = 0;
+        int prev = 0;
+        for (int i = 0; i < count; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            prev += (value >>> 1) ^ -(value & 1);
+            out.add(prev);
+        }
+    }
+
+    /**
+     * Reverses ids of the list starting from the index.
+     */
+    static void reverse(IntArrayList list, int from) {
+        for (int i = from, j = list.size() - 1; i < j; i++, j--) {
+            final int tmp = list.getInt(i);
+            list.set(i, list.getInt(j));
+            list.set(j, tmp);
+        }
+    }
+
+    private static int writeVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,86 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.rodes.Graph;
+import com.autoroute.logistic.rodes.Vertex;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Route of the full graph as ids: a hit of {@link DijkstraCache} is decoded into it without allocations.
+ * Every {@link SearchWorkspace} has one view, so it's valid only until the next {@link DijkstraAlgorithm#getPath}
+ * with the same workspace.
+ */
+public final class PathView {
+
+    private final IntArrayList ids = new IntArrayList();
+    private final Graph fullGraph;
+
+    PathView(Graph fullGraph) {
+        this.fullGraph = fullGraph;
+    }
+
+    void clear() {
+        ids.clear();
+    }
+
+    IntArrayList ids() {
+        return ids;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public int id(int i) {
+        return ids.getInt(i);
+    }
+
+    public Vertex vertex(int i) {
+        return fullGraph.getVertexById(ids.getInt(i));
+    }
+
+    public Vertex first() {
+        return vertex(0);
+    }
+
+    public Vertex last() {
+        return vertex(ids.size() - 1);
+    }
+
+    /**
+     * The same as {@link com.autoroute.logistic.rodes.Cycle#getCycleDistance} of the route.
+     */
+    public double distanceKM() {
+        double distance = 0;
+        for (int i = 1; i < ids.size(); i++) {
+            distance += vertex(i - 1).getDistance(vertex(i));
+        }
+        return distance;
+    }
+
+    /**
+     * Inserts vertices of the route into out from the index.
+     */
+    public void addTo(List<Vertex> out, int index) {
+        final int oldSize = out.size();
+        for (int i = 0; i < ids.size(); i++) {
+            out.add(vertex(i));
+        }
+        if (index != oldSize) {
+            Collections.rotate(out.subList(index, out.size()), ids.size());
+        }
+    }
+
+    public void addTo(List<Vertex> out) {
+        addTo(out, out.size());
+    }
+
+    public List<Vertex> toList() {
+        List<Vertex> route = new ArrayList<>(ids.size());
+        addTo(route);
+        return route;
+    }
+}
@@ -0,0 +1,19 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.rodes.Graph;
+
+public enum SearchMode {
+    UNIDIRECTIONAL,
+    // A* from both ends, explores about half of the area of UNIDIRECTIONAL
+    BIDIRECTIONAL,
+    // needs ContractionHierarchy attached to the full graph
+    CONTRACTION_HIERARCHY,
+    ;
+
+    /**
+     * @return the fastest mode for point-to-point queries in the full graph.
+     */
+    public static SearchMode fastest(Graph fullGraph) {
+        return fullGraph.getContractionHierarchy() != null ? CONTRACTION_HIERARCHY : BIDIRECTIONAL;
+    }
+}
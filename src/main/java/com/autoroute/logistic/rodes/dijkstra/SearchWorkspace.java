@@ -0,0 +1,55 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.rodes.Graph;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Workspaces of point-to-point searches and contraction hierarchy queries in one full graph with the view of their paths.
+ * It's used by one thread at a time: the owner of a run creates it for a thread or a task and drops it after the run,
+ * so threads of pools don't keep arrays of the graph and the graph itself after the request.
+ * Arrays are allocated by the first search which needs them.
+ */
+public final class SearchWorkspace {
+
+    private final Graph fullGraph;
+    private final PathView view;
+    @Nullable
+    private DijkstraWorkspace forward = null;
+    @Nullable
+    private DijkstraWorkspace backward = null;
+
+    public SearchWorkspace(Graph fullGraph) {
+        assert fullGraph.isFullGraph();
+        this.fullGraph = fullGraph;
+        this.view = new PathView(fullGraph);
+    }
+
+    Graph fullGraph() {
+        return fullGraph;
+    }
+
+    DijkstraWorkspace forward() {
+        if (forward == null) {
+            forward = new DijkstraWorkspace(fullGraph.getCsrGraph().size());
+        }
+        return forward;
+    }
+
+    /**
+     * Second workspace for the backward side of a bidirectional search.
+     */
+    DijkstraWorkspace backward() {
+        if (backward == null) {
+            backward = new DijkstraWorkspace(fullGraph.getCsrGraph().size());
+        }
+        return backward;
+    }
+
+    /**
+     * @return the empty view, the previous path in it isn't valid anymore.
+     */
+    PathView clearView() {
+        view.clear();
+        return view;
+    }
+}
@@ -0,0 +1,237 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Vertex id -> the last {@link #PATHS_PER_VERTEX} cached paths going through the vertex with its position there.
+ * Every part of a shortest path is a shortest path too, so a query with both ends on one cached path is its slice.
+ * Occurrences are packed into longs (index in the table of paths << 32 | position) in one array allocated up front,
+ * so the index has a fixed size which is charged to the cache. Slots of an evicted path are cleared
+ * and its index in the table is reused.
+ */
+final class SubpathIndex {
+
+    static final int PATHS_PER_VERTEX = 4;
+    private static final int LOCKS = 64;
+    private static final long EMPTY = -1;
+    private static final ThreadLocal<IntArrayList> DECODED = ThreadLocal.withInitial(IntArrayList::new);
+    private static final ThreadLocal<long[]> FOUND = ThreadLocal.withInitial(() -> new long[2 * PATHS_PER_VERTEX]);
+
+    private final int slotsPerVertex;
+    private final long[] slots;
+    private final byte[] nextSlot;
+    private final Object[] locks;
+
+    // guarded by itself
+    private final IntArrayList freeIndexes = new IntArrayList();
+    private CachedPath[] paths = new CachedPath[64];
+    private int pathsCount = 0;
+    private int livePaths = 0;
+
+    SubpathIndex(int verticesCount, int slotsPerVertex) {
+        assert slotsPerVertex >= 0 && slotsPerVertex <= PATHS_PER_VERTEX;
+        this.slotsPerVertex = slotsPerVertex;
+        this.slots = new long[verticesCount * slotsPerVertex];
+        Arrays.fill(slots, EMPTY);
+        this.nextSlot = new byte[slotsPerVertex == 0 ? 0 : verticesCount];
+        this.locks = new Object[LOCKS];
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * The index takes not more than a quarter of the bytes of the cache, 0 slots turn it off.
+     */
+    static int slotsPerVertex(int verticesCount, long maxBytes) {
+        final long bytesPerSlot = (long) Math.max(1, verticesCount) * Long.BYTES;
+        return (int) Math.min(PATHS_PER_VERTEX, maxBytes / 4 / bytesPerSlot);
+    }
+
+    long memoryBytes() {
+        return (long) slots.length * Long.BYTES + nextSlot.length;
+    }
+
+    void add(CachedPath path, IntArrayList ids) {
+        assert ids.size() == path.length;
+        if (slotsPerVertex == 0) {
+            return;
+        }
+        final int index = register(path);
+        if (index == -1) {
+            return;
+        }
+        for (int position = 0; position < ids.size(); position++) {
+            final int v = ids.getInt(position);
+            final int base = v * slotsPerVertex;
+            synchronized (locks[v & (LOCKS - 1)]) {
+                // remove marks the path before it clears slots, so an evicted path isn't added after that
+                if (path.evicted) {
+                    return;
+                }
+                // the same path can't go twice through the vertex, but a free slot is better to use
+                int slot = -1;
+                for (int i = 0; i < slotsPerVertex; i++) {
+                    if (slots[base + i] == EMPTY) {
+                        slot = i;
+                        break;
+                    }
+                }
+                if (slot == -1) {
+                    slot = nextSlot[v];
+                    nextSlot[v] = (byte) ((slot + 1) % slotsPerVertex);
+                }
+                slots[base + slot] = ((long) index << 32) | position;
+            }
+        }
+    }
+
+    /**
+     * Clears slots of the evicted path, so it isn't reachable from the index anymore.
+     */
+    void remove(CachedPath path) {
+        final int index;
+        synchronized (freeIndexes) {
+            path.evicted = true;
+            index = path.index;
+        }
+        if (index == -1) {
+            return;
+        }
+        final IntArrayList ids = DECODED.get();
+        ids.clear();
+        PathCodec.decode(path.data, path.length, ids);
+        for (int i = 0; i < ids.size(); i++) {
+            final int v = ids.getInt(i);
+            final int base = v * slotsPerVertex;
+            synchronized (locks[v & (LOCKS - 1)]) {
+                for (int j = 0; j < slotsPerVertex; j++) {
+                    if (slots[base + j] != EMPTY && (int) (slots[base + j] >>> 32) == index) {
+                        slots[base + j] = EMPTY;
+                    }
+                }
+            }
+        }
+        synchronized (freeIndexes) {
+            paths[index] = null;
+            freeIndexes.add(index);
+            livePaths--;
+        }
+    }
+
+    private int register(CachedPath path) {
+        synchronized (freeIndexes) {
+            if (path.evicted) {
+                return -1;
+            }
+            final int index;
+            if (!freeIndexes.isEmpty()) {
+                index = freeIndexes.removeInt(freeIndexes.size() - 1);
+            } else {
+                if (pathsCount == paths.length) {
+                    paths = Arrays.copyOf(paths, paths.length * 2);
+                }
+                index = pathsCount++;
+            }
+            paths[index] = path;
+            path.index = index;
+            livePaths++;
+            return index;
+        }
+    }
+
+    @Nullable
+    private CachedPath path(int index) {
+        synchronized (freeIndexes) {
+            return paths[index];
+        }
+    }
+
+    /**
+     * @return number of paths which can be found by the index.
+     */
+    int size() {
+        synchronized (freeIndexes) {
+            return livePaths;
+        }
+    }
+
+    boolean contains(int v, int u) {
+        return find(v, u, null);
+    }
+
+    /**
+     * Appends ids of the path from v to u to out if it is a part of a cached path.
+     */
+    boolean find(int v, int u, @Nullable IntArrayList out) {
+        if (slotsPerVertex == 0) {
+            return false;
+        }
+        final long[] found = FOUND.get();
+        copy(v, found, 0);
+        copy(u, found, slotsPerVertex);
+        for (int i = 0; i < slotsPerVertex; i++) {
+            final long vOccurrence = found[i];
+            if (vOccurrence == EMPTY) {
+                continue;
+            }
+            for (int j = slotsPerVertex; j < 2 * slotsPerVertex; j++) {
+                final long uOccurrence = found[j];
+                if (uOccurrence == EMPTY || (uOccurrence >>> 32) != (vOccurrence >>> 32)) {
+                    continue;
+                }
+                final CachedPath path = path((int) (vOccurrence >>> 32));
+                // the index could be reused by another path after the slots were copied, ends of the slice are checked
+                if (path != null && slice(path, (int) vOccurrence, (int) uOccurrence, v, u, out)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void copy(int v, long[] to, int offset) {
+        synchronized (locks[v & (LOCKS - 1)]) {
+            System.arraycopy(slots, v * slotsPerVertex, to, offset, slotsPerVertex);
+        }
+    }
+
+    private static boolean slice(CachedPath path, int from, int to, int v, int u, @Nullable IntArrayList out) {
+        if (Math.max(from, to) >= path.length) {
+            return false;
+        }
+        final IntArrayList decoded = DECODED.get();
+        decoded.clear();
+        PathCodec.decode(path.data, Math.max(from, to) + 1, decoded);
+        if (decoded.getInt(from) != v || decoded.getInt(to) != u) {
+            return false;
+        }
+        if (out != null) {
+            final int step = from <= to ? 1 : -1;
+            for (int i = from; i != to + step; i += step) {
+                out.add(decoded.getInt(i));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Path encoded by {@link PathCodec}.
+     */
+    static final class CachedPath {
+
+        final byte[] data;
+        final int length;
+        volatile boolean evicted = false;
+        // index in the table of paths, -1 if the path isn't in the index
+        int index = -1;
+
+        CachedPath(IntArrayList ids) {
+            this.data = PathCodec.encode(ids);
+            this.length = ids.size();
+        }
+    }
+}
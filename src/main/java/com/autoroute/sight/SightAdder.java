@@ -1,11 +1,14 @@
 package com.autoroute.sight;
 
 import com.autoroute.logistic.LogisticUtils;
+import com.autoroute.logistic.SpatialIndex;
 import com.autoroute.logistic.rodes.Graph;
 import com.autoroute.logistic.rodes.Route;
 import com.autoroute.logistic.rodes.Vertex;
-import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.MultiSourceSearch;
 import com.autoroute.logistic.LatLon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -25,49 +28,77 @@ public class SightAdder {
         Set<Sight> sightsInRoute = new HashSet<>();
         int minSights = (int) (route.routeDistance() * MIN_SIGHTS_PER_KM);
         int maxSights = (int) (route.routeDistance() * MAX_SIGHTS_PER_KM);
+        SpatialIndex routeIndex = new SpatialIndex(route.route());
 
+        // sights close to the route with their nearest vertices in the full graph
+        List<Sight> candidates = new ArrayList<>();
+        IntArrayList sightIds = new IntArrayList();
         for (Sight sight : sights) {
-            if (sightsInRoute.size() > maxSights) {
+            if (candidates.size() > maxSights) {
                 break;
             }
-            Vertex v = LogisticUtils.findNearestVertex(sight.latLon(), route.route());
+            Vertex v = routeIndex.findNearest(sight.latLon());
             if (v.isSynthetic()) {
                 continue;
             }
-            if (LatLon.distanceKM(v.getLatLon(), sight.latLon()) < 0.2 && !sightsInRoute.contains(sight)) {
-                final Vertex vInFullGraph = fullGraph.findByIdentificator(v.getIdentificator());
-                final Vertex sightVertex = fullGraph.findNearestVertex(sight.latLon());
+            if (LatLon.distanceKM(v.getLatLon(), sight.latLon()) < 0.2 && !candidates.contains(sight)) {
+                candidates.add(sight);
+                sightIds.add(fullGraph.findNearestVertex(sight.latLon()).getId());
+            }
+        }
+        if (candidates.isEmpty()) {
+            return finish(route, sightsInRoute, minSights);
+        }
 
-                var dijkstra = new DijkstraAlgorithm(fullGraph, vInFullGraph);
-                dijkstra.run(sightVertex);
-                List<Vertex> routeFromVToSight = dijkstra.getRouteFromFullGraph(sightVertex);
+        // one search from all vertices of the route finds detours to all sights
+        Long2ObjectOpenHashMap<Vertex> routeVertices = new Long2ObjectOpenHashMap<>();
+        IntArrayList sources = new IntArrayList();
+        for (Vertex v : route.route()) {
+            if (!v.isSynthetic() && routeVertices.putIfAbsent(v.getIdentificator(), v) == null) {
+                sources.add(fullGraph.findByIdentificator(v.getIdentificator()).getId());
+            }
+        }
+        final MultiSourceSearch search = new MultiSourceSearch(fullGraph);
+        search.run(sources, sightIds);
 
-                final double distanceFromLastToSight =
-                    LatLon.distanceKM(routeFromVToSight.get(routeFromVToSight.size() - 1).getLatLon(), sight.latLon());
-                for (int i = 0; i < routeFromVToSight.size() - 1; i++) {
-                    final Vertex u = routeFromVToSight.get(i);
-                    if (LatLon.distanceKM(u.getLatLon(), sight.latLon()) < distanceFromLastToSight) {
-                        routeFromVToSight = routeFromVToSight.subList(0, i + 1);
-                        break;
-                    }
-                }
+        for (int sightIndex = 0; sightIndex < candidates.size(); sightIndex++) {
+            final Sight sight = candidates.get(sightIndex);
+            List<Vertex> routeFromVToSight = search.getRoute(sightIds.getInt(sightIndex));
+            if (routeFromVToSight.isEmpty()) {
+                continue;
+            }
+            final Vertex v = routeVertices.get(routeFromVToSight.get(0).getIdentificator());
+            assert v != null;
 
-                // TODO: we need to have ALL types of roads here in fullGraph to be able to find a route which is not a road
-                if (routeFromVToSight.size() == 1) {
-                    // we didn't find a route between start & finish
-                    routeFromVToSight.add(new Vertex(sight.latLon()));
+            final double distanceFromLastToSight =
+                LatLon.distanceKM(routeFromVToSight.get(routeFromVToSight.size() - 1).getLatLon(), sight.latLon());
+            for (int i = 0; i < routeFromVToSight.size() - 1; i++) {
+                final Vertex u = routeFromVToSight.get(i);
+                if (LatLon.distanceKM(u.getLatLon(), sight.latLon()) < distanceFromLastToSight) {
+                    routeFromVToSight = routeFromVToSight.subList(0, i + 1);
+                    break;
                 }
-                final ArrayList<Vertex> reversedPath = new ArrayList<>(routeFromVToSight);
-                Collections.reverse(reversedPath);
-                routeFromVToSight.addAll(reversedPath);
-                // TODO: check that distance < maxDistance
-                // TODO: need to check if i + 1 bigger than route.size() ?
-                int index = route.getIndexByVertex(v);
-                route.route().addAll(index + 1, routeFromVToSight);
-                sightsInRoute.add(sight);
-                // sights.remove(sight); // uncomment if we want unique sights
             }
+
+            // TODO: we need to have ALL types of roads here in fullGraph to be able to find a route which is not a road
+            if (routeFromVToSight.size() == 1) {
+                // we didn't find a route between start & finish
+                routeFromVToSight.add(new Vertex(sight.latLon()));
+            }
+            final ArrayList<Vertex> reversedPath = new ArrayList<>(routeFromVToSight);
+            Collections.reverse(reversedPath);
+            routeFromVToSight.addAll(reversedPath);
+            // TODO: check that distance < maxDistance
+            // TODO: need to check if i + 1 bigger than route.size() ?
+            int index = route.getIndexByVertex(v);
+            route.route().addAll(index + 1, routeFromVToSight);
+            sightsInRoute.add(sight);
+            // sights.remove(sight); // uncomment if we want unique sights
         }
+        return finish(route, sightsInRoute, minSights);
+    }
+
+    private static Route finish(Route route, Set<Sight> sightsInRoute, int minSights) {
         if (sightsInRoute.size() < minSights) {
             sightsInRoute.clear();
         }
@@ -59,11 +59,13 @@ public class Bot extends TelegramLongPollingBot {
     }
 
     private final Database db;
+    private final JobQueue jobs;
     ThreadLocal<Boolean> telegramSentMessage;
 
-    public Bot(DefaultBotOptions options, Database db) {
+    public Bot(DefaultBotOptions options, Database db, JobQueue jobs) {
         super(options);
         this.db = db;
+        this.jobs = jobs;
         this.telegramSentMessage = new ThreadLocal<>();
     }
 
@@ -94,7 +96,7 @@ public class Bot extends TelegramLongPollingBot {
                 switch (dbRow.state()) {
                     case CREATED -> processLocationUpdate(dbRow, msgDate, update);
                     case SENT_LOCATION -> processDistanceUpdate(dbRow, msgDate, update);
-                    case SENT_DISTANCE -> sendMessage(chatId, WAITING_FOR_RESULT);
+                    case SENT_DISTANCE, GOT_FIRST_PART -> sendMessage(chatId, WAITING_FOR_RESULT);
                     case FAILED_TO_PROCESS -> {
                         processStartCommand(chatId, msgDate, update, dbRow);
                         processRepeatCommand(chatId, msgDate, update, dbRow);
@@ -145,6 +147,7 @@ public class Bot extends TelegramLongPollingBot {
                     .withState(State.SENT_DISTANCE)
                     .withDate(msgDate);
                 db.updateRow(newRow);
+                jobs.submit(newRow);
             } else if (oldRow.state() == State.FAILED_TO_PROCESS) {
                 sendMessage(chatId, "We couldn't build a route earlier - so we don't try it again:( Try another location/distance please");
             } else {
@@ -199,7 +202,9 @@ public class Bot extends TelegramLongPollingBot {
             } else {
                 final String userName = update.getMessage().getChat().getUserName();
                 Row row = new Row(chatId, userName, date, State.SENT_DISTANCE, dbRow.startPoint(), minDistance, maxDistance);
+                // the row is saved first, so the request is recovered after a restart
                 db.updateRow(row);
+                jobs.submit(row);
                 sendMessage(chatId, WAITING_FOR_RESULT);
             }
         } else {
@@ -271,12 +276,12 @@ public class Bot extends TelegramLongPollingBot {
         throw ex;
     }
 
-    public static Bot startBot(Database db) {
+    public static Bot startBot(Database db, JobQueue jobs) {
         try {
             TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
             var options = new DefaultBotOptions();
             options.setMaxThreads(1);
-            final Bot bot = new Bot(options, db);
+            final Bot bot = new Bot(options, db, jobs);
             botsApi.registerBot(bot);
             return bot;
         } catch (TelegramApiException e) {
@@ -0,0 +1,61 @@
+package com.autoroute.telegram;
+
+import com.autoroute.telegram.db.Row;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Route requests waiting for a worker. The bot adds a request as soon as its row gets all data,
+ * workers take requests in the order of arrival. The database keeps rows only for recovery after a restart.
+ */
+public class JobQueue {
+
+    /**
+     * @param takenAtMs time when a worker took the job, -1 while the job is in the queue.
+     */
+    public record Job(Row row, long submittedAtMs, long takenAtMs) {
+
+        private Job taken(long now) {
+            return new Job(row, submittedAtMs, now);
+        }
+
+        public long queueWaitMs() {
+            assert takenAtMs != -1;
+            return takenAtMs - submittedAtMs;
+        }
+    }
+
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final LongAdder taken = new LongAdder();
+    private final LongAdder totalWaitMs = new LongAdder();
+    private final LongAccumulator maxWaitMs = new LongAccumulator(Math::max, 0);
+
+    public void submit(Row row) {
+        queue.add(new Job(row, System.currentTimeMillis(), -1));
+    }
+
+    /**
+     * Waits for the next job.
+     */
+    public Job take() throws InterruptedException {
+        final Job job = queue.take().taken(System.currentTimeMillis());
+        taken.increment();
+        totalWaitMs.add(job.queueWaitMs());
+        maxWaitMs.accumulate(job.queueWaitMs());
+        return job;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public String toString() {
+        final long jobs = taken.sum();
+        return "waiting: " + size() + ", taken: " + jobs
+            + ", avg wait: " + (jobs == 0 ? 0 : totalWaitMs.sum() / jobs) + "ms, max wait: " + maxWaitMs.get() + "ms";
+    }
+}
@@ -0,0 +1,148 @@
+package com.autoroute.telegram;
+
+import com.autoroute.logistic.LogisticUtils;
+import com.autoroute.logistic.rodes.Route;
+import com.autoroute.telegram.db.Database;
+import com.autoroute.telegram.db.Row;
+import com.autoroute.telegram.db.State;
+import com.autoroute.utils.Utils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends routes of one request while they are being built: the first route as a gpx file at once,
+ * next ones by zip archives of {@link #BATCH_SIZE} routes and the rest after the search.
+ * Routes come from threads of the search, files are written and sent by one thread of the streamer.
+ */
+public class RouteStreamer {
+
+    private static final Logger LOGGER = LogManager.getLogger(RouteStreamer.class);
+    private static final int BATCH_SIZE = 5;
+
+    private final Database db;
+    private final Bot telegramBot;
+    private final Row dbRow;
+    private final Path tracksFolder;
+    private final long startTime = System.currentTimeMillis();
+    private final ExecutorService sender = Executors.newSingleThreadExecutor();
+
+    // only the sender thread uses these fields
+    private final Set<Route> sent = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Route> batch = new ArrayList<>();
+    private int batches = 0;
+    private volatile long timeToFirstRouteMs = -1;
+
+    public RouteStreamer(Database db, Bot telegramBot, Row dbRow, Path tracksFolder) {
+        this.db = db;
+        this.telegramBot = telegramBot;
+        this.dbRow = dbRow;
+        this.tracksFolder = tracksFolder;
+    }
+
+    /**
+     * Can be called from any thread.
+     */
+    public void onRoute(Route route) {
+        sender.execute(() -> {
+            try {
+                if (sent.isEmpty()) {
+                    sendFirst(route);
+                } else {
+                    batch.add(route);
+                    if (batch.size() >= BATCH_SIZE) {
+                        sendBatch();
+                    }
+                }
+            } catch (RuntimeException | IOException e) {
+                LOGGER.error("couldn't send a route for row: {}", dbRow, e);
+            }
+        });
+    }
+
+    /**
+     * Sends all routes which weren't sent yet and waits for the sender.
+     *
+     * @return number of sent routes.
+     */
+    public int finish(List<Route> routes) {
+        sender.execute(() -> {
+            try {
+                for (Route route : routes) {
+                    if (!sent.contains(route) && !batch.contains(route)) {
+                        batch.add(route);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    sendBatch();
+                }
+            } catch (RuntimeException | IOException e) {
+                LOGGER.error("couldn't send routes for row: {}", dbRow, e);
+            }
+        });
+        sender.shutdown();
+        try {
+            if (!sender.awaitTermination(10, TimeUnit.MINUTES)) {
+                LOGGER.warn("routes weren't sent for 10 minutes for row: {}", dbRow);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("sent: {} routes in: {} parts, time to the first route: {}ms, total: {}ms",
+            sent.size(), batches + (sent.isEmpty() ? 0 : 1), timeToFirstRouteMs, System.currentTimeMillis() - startTime);
+        return sent.size();
+    }
+
+    /**
+     * Stops the sender without waiting for routes which weren't sent, can be called after {@link #finish}.
+     */
+    public void close() {
+        sender.shutdownNow();
+    }
+
+    /**
+     * @return time from the start of the request to the first sent route, -1 if nothing was sent.
+     */
+    public long getTimeToFirstRouteMs() {
+        return timeToFirstRouteMs;
+    }
+
+    private void sendFirst(Route route) {
+        final Path file = tracksFolder.resolve(fileName(1, route));
+        Utils.writeGPX(route, file.toString());
+        telegramBot.sendFile(dbRow.chatId(), file.resolveSibling(file.getFileName() + ".gpx"));
+        sent.add(route);
+        timeToFirstRouteMs = System.currentTimeMillis() - startTime;
+        LOGGER.info("sent the first route for: {}ms for row: {}", timeToFirstRouteMs, dbRow);
+        db.updateRow(dbRow.withState(State.GOT_FIRST_PART));
+        telegramBot.sendMessage(dbRow.chatId(), "Here is your first route! We are looking for more of them.");
+    }
+
+    private void sendBatch() throws IOException {
+        batches++;
+        final Path batchFolder = tracksFolder.resolve(String.valueOf(batches));
+        for (Route route : batch) {
+            sent.add(route);
+            Utils.writeGPX(route, batchFolder.resolve(fileName(sent.size(), route)).toString());
+        }
+        final Path zipPath = tracksFolder.resolve("routes_" + batches + ".zip");
+        Utils.pack(batchFolder, zipPath);
+        telegramBot.sendFile(dbRow.chatId(), zipPath);
+        LOGGER.info("sent: {} routes in part: {} for row: {}", batch.size(), batches, dbRow);
+        batch.clear();
+    }
+
+    private static String fileName(int index, Route route) {
+        return index + "_" + ((int) (LogisticUtils.getCycleDistanceSlow(route.route()))) + "km";
+    }
+}
@@ -1,19 +1,24 @@
 package com.autoroute.utils;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Strings of one graph, so refs of ways can be compared by reference.
+ * Every request has its own interner, it's dropped with the graph.
+ */
 public class HMInterner {
 
-    public static HMInterner INTERNER = new HMInterner();
-
     private final Map<String, String> map;
 
     public HMInterner() {
-        map = new HashMap<>();
+        map = new ConcurrentHashMap<>();
     }
 
     public String intern(String s) {
+        if (s == null) {
+            return null;
+        }
         String exist = map.putIfAbsent(s, s);
         return (exist == null) ? s : exist;
     }
@@ -1,5 +1,6 @@
 package com.autoroute.utils;
 
+import com.autoroute.Constants;
 import com.autoroute.api.overpass.Node;
 import com.autoroute.api.overpass.OverpassResponse;
 import com.autoroute.api.overpass.Way;
@@ -25,7 +26,13 @@ import java.util.zip.ZipOutputStream;
 public class Utils {
 
     private static final boolean IS_DEBUGGING = "true".equals(System.getProperty("debug"));
+    private static final boolean IS_CONTRACTION_HIERARCHY_ENABLED = "true".equals(System.getProperty("ch"));
+    private static final int CYCLE_SEARCH_THREADS =
+        Math.max(1, Integer.getInteger("cycleThreads", Runtime.getRuntime().availableProcessors()));
+    private static final int ROUTE_REQUEST_THREADS = Math.max(1, Integer.getInteger("requestThreads", 2));
     private static final ExecutorService service = Executors.newFixedThreadPool(1);
+    // side of a tile of start points in degrees, requests from one tile share the full graph
+    private static final double GRAPH_TILE_DEGREES = 0.05;
 
     public static Integer parseInteger(String str) {
         try {
@@ -47,6 +54,46 @@ public class Utils {
         return Paths.get("tracks").resolve(str);
     }
 
+    /**
+     * Folder of one request: requests with the same start and distances can be built at once,
+     * so every chat and request date has its own folder.
+     */
+    public static Path pathForRoute(LatLon startPoint, int minDistance, int maxDistance, long chatId, long date) {
+        return pathForRoute(startPoint, minDistance, maxDistance).resolve(chatId + "_" + date);
+    }
+
+    /**
+     * Start points are snapped to tiles, so requests from close start points reuse one graph file.
+     */
+    public static Path pathForGraph(LatLon startPoint, int maxDistance) {
+        String str = maxDistance + "_" + graphTile(startPoint.lat()) + "_" + graphTile(startPoint.lon()) + ".graph";
+        return Paths.get("graphs").resolve(str);
+    }
+
+    /**
+     * Roads of the full graph are downloaded around the center of the tile of the start point.
+     */
+    public static LatLon graphCenter(LatLon startPoint) {
+        return new LatLon((graphTile(startPoint.lat()) + 0.5) * GRAPH_TILE_DEGREES,
+            (graphTile(startPoint.lon()) + 0.5) * GRAPH_TILE_DEGREES);
+    }
+
+    /**
+     * Radius of roads around {@link #graphCenter}: every start point of the tile has roads in maxDistance / 2 around it.
+     */
+    public static double graphRadiusKM(int maxDistance) {
+        // half of the diagonal of the tile
+        return maxDistance / 2.0 + GRAPH_TILE_DEGREES * Constants.KM_IN_ONE_DEGREE * Math.sqrt(2) / 2;
+    }
+
+    private static long graphTile(double degrees) {
+        return (long) Math.floor(degrees / GRAPH_TILE_DEGREES);
+    }
+
+    public static Path pathForContractionHierarchy(Path graphPath) {
+        return graphPath.resolveSibling(graphPath.getFileName() + ".ch");
+    }
+
     public static void sleep(int ms) {
         try {
             Thread.sleep(ms);
@@ -197,4 +244,18 @@ public class Utils {
     public static boolean isDebugging() {
         return IS_DEBUGGING;
     }
+
+    public static boolean isContractionHierarchyEnabled() {
+        return IS_CONTRACTION_HIERARCHY_ENABLED;
+    }
+
+    // -DcycleThreads=1 gives the serial search
+    public static int cycleSearchThreads() {
+        return CYCLE_SEARCH_THREADS;
+    }
+
+    // -DrequestThreads=1 gives one request at a time
+    public static int routeRequestThreads() {
+        return ROUTE_REQUEST_THREADS;
+    }
 }
@@ -59,4 +59,27 @@ class UtilsTest {
         final Path resPath = Utils.pathForRoute(point, min, max);
         Assertions.assertEquals(expected, resPath.toString());
     }
+
+    @Test
+    public void pathForGraphIsSharedByCloseStartPoints() {
+        final Path path = Utils.pathForGraph(new LatLon(35.101, 33.201), 100);
+        Assertions.assertEquals(path, Utils.pathForGraph(new LatLon(35.102, 33.202), 100));
+        Assertions.assertNotEquals(path, Utils.pathForGraph(new LatLon(35.101, 33.201), 200));
+        Assertions.assertNotEquals(path, Utils.pathForGraph(new LatLon(35.201, 33.201), 100));
+    }
+
+    @Test
+    public void graphCoversStartPointsOfTile() {
+        final LatLon start = new LatLon(35.101, 33.249);
+        final LatLon center = Utils.graphCenter(start);
+        Assertions.assertEquals(center, Utils.graphCenter(new LatLon(35.149, 33.201)));
+        Assertions.assertTrue(LatLon.distanceKM(center, start) + 50 <= Utils.graphRadiusKM(100));
+    }
+
+    @Test
+    public void pathForRouteOfRequestTest() {
+        var point = new LatLon(5.5, 10.6);
+        Assertions.assertEquals("tracks/100_200_5.5_10.6/42_1000", Utils.pathForRoute(point, 100, 200, 42, 1000).toString());
+        Assertions.assertNotEquals(Utils.pathForRoute(point, 100, 200, 42, 1000), Utils.pathForRoute(point, 100, 200, 43, 1000));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+package com.autoroute.logistic;
+
+import com.autoroute.logistic.rodes.Graph;
+import com.autoroute.logistic.rodes.TestGraphs;
+import com.autoroute.logistic.rodes.Vertex;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.SearchMode;
+import com.autoroute.logistic.rodes.dijkstra.SearchWorkspace;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.Reference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class MemoryAdmissionTest {
+
+    @Test
+    void admitsWhileFits() throws InterruptedException {
+        MemoryAdmission admission = new MemoryAdmission(100);
+        final long first = admission.acquire(40);
+        final long second = admission.acquire(60);
+        Assertions.assertEquals(2, admission.getRunning());
+        Assertions.assertEquals(100, admission.getReservedBytes());
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            try {
+                admission.acquire(10);
+                admitted.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        t.start();
+        Assertions.assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        admission.release(first);
+        Assertions.assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(70, admission.getReservedBytes());
+        admission.release(second);
+        t.join();
+    }
+
+    @Test
+    void bigBuildRunsAlone() throws InterruptedException {
+        MemoryAdmission admission = new MemoryAdmission(100);
+        final long big = admission.acquire(1000);
+        Assertions.assertEquals(100, big);
+
+        // the second big build waits for the first one, small builds wait for it in the order of arrival
+        final AtomicLong order = new AtomicLong();
+        final long[] admittedAt = new long[2];
+        final CountDownLatch bigWaits = new CountDownLatch(1);
+        Thread bigThread = new Thread(() -> {
+            try {
+                bigWaits.countDown();
+                final long reserved = admission.acquire(1000);
+                admittedAt[0] = order.incrementAndGet();
+                admission.release(reserved);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        bigThread.start();
+        bigWaits.await();
+        Thread.sleep(100);
+        Thread smallThread = new Thread(() -> {
+            try {
+                final long reserved = admission.acquire(1);
+                admittedAt[1] = order.incrementAndGet();
+                admission.release(reserved);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        smallThread.start();
+        Thread.sleep(100);
+        Assertions.assertEquals(0, order.get());
+        admission.release(big);
+        bigThread.join();
+        smallThread.join();
+        Assertions.assertEquals(1, admittedAt[0]);
+        Assertions.assertEquals(2, admittedAt[1]);
+        Assertions.assertEquals(0, admission.getRunning());
+    }
+
+    @Test
+    void interruptedBuildDoesNotBlockOthers() throws InterruptedException {
+        MemoryAdmission admission = new MemoryAdmission(100);
+        final long first = admission.acquire(100);
+        Thread waiting = new Thread(() -> {
+            try {
+                admission.acquire(100);
+                Assertions.fail("must be interrupted");
+            } catch (InterruptedException ignored) {
+            }
+        });
+        waiting.start();
+        Thread.sleep(100);
+        waiting.interrupt();
+        waiting.join();
+        admission.release(first);
+        Assertions.assertEquals(100, admission.acquire(100));
+    }
+
+    @Test
+    void estimateGrowsWithDistance() {
+        Assertions.assertTrue(MemoryAdmission.estimateSharedBytes(200) > MemoryAdmission.estimateSharedBytes(100));
+        Assertions.assertTrue(MemoryAdmission.estimateOwnBytes(200) > MemoryAdmission.estimateOwnBytes(100));
+        Assertions.assertTrue(MemoryAdmission.estimateOwnBytes(1) >= MemoryAdmission.BASE_BYTES);
+    }
+
+    @Test
+    void sharedGraphIsReservedOnce() throws InterruptedException {
+        MemoryAdmission admission = new MemoryAdmission(100);
+        final Path graph = Path.of("graphs", "100_a.graph");
+        final long first = admission.acquire(graph, 50, 20);
+        Assertions.assertEquals(70, admission.getReservedBytes());
+        // the second build of the graph needs only its own bytes
+        final long second = admission.acquire(graph, 50, 20);
+        Assertions.assertEquals(90, admission.getReservedBytes());
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            try {
+                final long reserved = admission.acquire(Path.of("graphs", "100_b.graph"), 50, 20);
+                admitted.countDown();
+                admission.release(Path.of("graphs", "100_b.graph"), reserved);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        t.start();
+        Assertions.assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        admission.release(graph, first);
+        // the graph is still used by the second build
+        Assertions.assertEquals(70, admission.getReservedBytes());
+        Assertions.assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        admission.release(graph, second);
+        Assertions.assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        t.join();
+        Assertions.assertEquals(0, admission.getReservedBytes());
+    }
+
+    @Test
+    void estimateCoversFootprintOfGeneratedGraph() throws InterruptedException {
+        final int side = 250;
+        final int threads = 4;
+        final long before = usedMemory();
+
+        final Graph g = TestGraphs.grid(side, new Random(1), TestGraphs.ALL_EDGES);
+        g.buildLandmarks();
+        g.freeze();
+
+        // every search thread keeps its workspaces while its task is alive
+        final CountDownLatch searched = new CountDownLatch(threads);
+        final CountDownLatch measured = new CountDownLatch(1);
+        List<Thread> searchThreads = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Vertex start = g.getVertexById(t);
+            final Vertex finish = g.getVertexById(g.size() - 1 - t);
+            final Thread thread = new Thread(() -> {
+                final SearchWorkspace workspace = new SearchWorkspace(g);
+                new DijkstraAlgorithm(g, start, workspace).run(finish, SearchMode.BIDIRECTIONAL);
+                searched.countDown();
+                try {
+                    measured.await();
+                } catch (InterruptedException ignored) {
+                }
+                Reference.reachabilityFence(workspace);
+            });
+            thread.start();
+            searchThreads.add(thread);
+        }
+        searched.await();
+        final long footprint = usedMemory() - before;
+        measured.countDown();
+        for (Thread thread : searchThreads) {
+            thread.join();
+        }
+
+        // the cache is charged by its limit, the empty one holds only the subpath index
+        final long estimate = g.size() * MemoryAdmission.bytesPerVertex(threads) + g.getDijkstraCache().getBytes();
+        Assertions.assertTrue(estimate >= footprint, "estimate: " + estimate + ", footprint: " + footprint);
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,78 @@
+package com.autoroute.logistic;
+
+import com.autoroute.logistic.rodes.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class SpatialIndexTest {
+
+    private static List<Vertex> randomVertices(Random random, int n) {
+        List<Vertex> vertices = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            final double lat = 34.5 + random.nextDouble();
+            final double lon = 32.5 + random.nextDouble() * 1.5;
+            vertices.add(new Vertex(i, i, new LatLon(lat, lon), null));
+        }
+        return vertices;
+    }
+
+    @Test
+    void findNearest() {
+        final Random random = new Random(42);
+        final List<Vertex> vertices = randomVertices(random, 5000);
+        final SpatialIndex index = new SpatialIndex(vertices);
+        for (int i = 0; i < 1000; i++) {
+            // some points are far outside of the vertices
+            final LatLon latLon = new LatLon(33 + random.nextDouble() * 4, 31 + random.nextDouble() * 4);
+            Assertions.assertSame(LogisticUtils.findNearestVertex(latLon, vertices), index.findNearest(latLon));
+        }
+    }
+
+    @Test
+    void findNearestAfterAdd() {
+        final Random random = new Random(43);
+        final List<Vertex> vertices = randomVertices(random, 10);
+        final SpatialIndex index = new SpatialIndex(vertices, 0.5);
+        final List<Vertex> added = randomVertices(random, 500);
+        for (Vertex v : added) {
+            index.add(v);
+            vertices.add(v);
+        }
+        Assertions.assertEquals(510, index.size());
+        for (Vertex v : vertices) {
+            Assertions.assertSame(v, index.findNearest(v.getLatLon()));
+        }
+        for (int i = 0; i < 200; i++) {
+            final LatLon latLon = new LatLon(34.5 + random.nextDouble(), 32.5 + random.nextDouble() * 1.5);
+            Assertions.assertSame(LogisticUtils.findNearestVertex(latLon, vertices), index.findNearest(latLon));
+        }
+    }
+
+    @Test
+    void findInRadius() {
+        final Random random = new Random(44);
+        final List<Vertex> vertices = randomVertices(random, 3000);
+        final SpatialIndex index = new SpatialIndex(vertices);
+        for (double radius : new double[]{0.1, 1, 5, 30}) {
+            final LatLon latLon = new LatLon(35, 33);
+            List<Vertex> expected = new ArrayList<>();
+            for (Vertex v : vertices) {
+                if (LatLon.distanceKM(latLon, v.getLatLon()) < radius) {
+                    expected.add(v);
+                }
+            }
+            Assertions.assertEquals(expected, index.findInRadius(latLon, radius));
+        }
+    }
+
+    @Test
+    void empty() {
+        final SpatialIndex index = new SpatialIndex(new ArrayList<>());
+        Assertions.assertNull(index.findNearest(new LatLon(1, 1)));
+        Assertions.assertTrue(index.findInRadius(new LatLon(1, 1), 10).isEmpty());
+    }
+}
@@ -0,0 +1,127 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares memory & traversal time of object graph (Vertex with neighbors list) and CsrGraph
+ * on a synthetic grid of roads. It's not a test, it's run by hand from the test classpath
+ * with the same heap as in run.sh: -Xmx400m.
+ */
+public class CsrGraphBenchmark {
+
+    private static final Logger LOGGER = LogManager.getLogger(CsrGraphBenchmark.class);
+    private static final int SIDE = 700;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) {
+        final long beforeVertices = usedMemory();
+        List<Vertex> vertices = buildGrid(SIDE);
+        for (Vertex v : vertices) {
+            v.calculateDistance();
+        }
+        final long objectGraphBytes = usedMemory() - beforeVertices;
+
+        final long beforeCsr = usedMemory();
+        CsrGraph csr = CsrGraph.fromVertices(vertices);
+        final long csrGraphBytes = usedMemory() - beforeCsr;
+
+        LOGGER.info("vertices: {}, edges: {}", csr.size(), csr.edgesCount());
+        LOGGER.info("object graph: {} MB, csr graph: {} MB (estimated: {} MB)",
+            objectGraphBytes / 1024 / 1024, csrGraphBytes / 1024 / 1024, csr.memoryBytes() / 1024 / 1024);
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            final double objectSum = traverseObjectGraph(vertices);
+            long objectTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            final double csrSum = traverseCsrGraph(csr);
+            long csrTime = System.nanoTime() - start;
+
+            assert Math.abs(objectSum - csrSum) < objectSum / 1000;
+            LOGGER.info("iteration: {}, object graph bfs: {} ms, csr graph bfs: {} ms",
+                i, objectTime / 1_000_000, csrTime / 1_000_000);
+        }
+    }
+
+    private static List<Vertex> buildGrid(int side) {
+        Random random = new Random(42);
+        List<Vertex> vertices = new ArrayList<>(side * side);
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                final LatLon latLon = new LatLon(
+                    50 + i * 0.001 + random.nextDouble() * 0.0001,
+                    30 + j * 0.001 + random.nextDouble() * 0.0001);
+                final int id = vertices.size();
+                vertices.add(new Vertex(id, id, latLon, null));
+            }
+        }
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                final Vertex v = vertices.get(i * side + j);
+                if (i + 1 < side) {
+                    TestGraphs.add(v, vertices.get((i + 1) * side + j));
+                }
+                if (j + 1 < side) {
+                    TestGraphs.add(v, vertices.get(i * side + j + 1));
+                }
+            }
+        }
+        return vertices;
+    }
+
+    // the same access pattern as in DijkstraAlgorithm before CsrGraph: neighbors list + getDistance
+    private static double traverseObjectGraph(List<Vertex> vertices) {
+        boolean[] visited = new boolean[vertices.size()];
+        List<Vertex> queue = new ArrayList<>(vertices.size());
+        queue.add(vertices.get(0));
+        visited[0] = true;
+        double sum = 0;
+        for (int pointer = 0; pointer < queue.size(); pointer++) {
+            final Vertex v = queue.get(pointer);
+            for (Vertex u : v.getNeighbors()) {
+                sum += v.getDistance(u);
+                if (!visited[u.getId()]) {
+                    visited[u.getId()] = true;
+                    queue.add(u);
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static double traverseCsrGraph(CsrGraph csr) {
+        boolean[] visited = new boolean[csr.size()];
+        int[] queue = new int[csr.size()];
+        int size = 0;
+        queue[size++] = 0;
+        visited[0] = true;
+        double sum = 0;
+        for (int pointer = 0; pointer < size; pointer++) {
+            final int v = queue[pointer];
+            for (int e = csr.edgesStart(v); e < csr.edgesEnd(v); e++) {
+                final int u = csr.target(e);
+                sum += csr.weight(e);
+                if (!visited[u]) {
+                    visited[u] = true;
+                    queue[size++] = u;
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,40 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class CsrGraphTest {
+
+    @Test
+    void fromVertices() {
+        final Vertex v0 = new Vertex(0, 100, new LatLon(1, 1), null);
+        final Vertex v1 = new Vertex(1, 101, new LatLon(1, 2), null);
+        final Vertex v2 = new Vertex(2, 102, new LatLon(2, 2), null);
+        final Vertex v3 = new Vertex(3, 103, new LatLon(3, 3), null);
+        TestGraphs.add(v0, v1);
+        TestGraphs.add(v1, v2);
+        TestGraphs.add(v0, v2);
+
+        final CsrGraph g = CsrGraph.fromVertices(List.of(v0, v1, v2, v3));
+        Assertions.assertEquals(4, g.size());
+        Assertions.assertEquals(6, g.edgesCount());
+        Assertions.assertEquals(2, g.degree(0));
+        Assertions.assertEquals(2, g.degree(1));
+        Assertions.assertEquals(2, g.degree(2));
+        Assertions.assertEquals(0, g.degree(3));
+
+        Assertions.assertEquals(101, g.identificator(1));
+        Assertions.assertEquals(new LatLon(2, 2), g.latLon(2));
+
+        final int edge = g.findEdge(0, 1);
+        Assertions.assertTrue(edge >= 0);
+        Assertions.assertEquals(1, g.target(edge));
+        Assertions.assertEquals(LatLon.distanceKM(v0.getLatLon(), v1.getLatLon()), g.weight(edge), 0.001);
+        Assertions.assertTrue(g.findEdge(1, 0) >= 0);
+        Assertions.assertEquals(-1, g.findEdge(0, 3));
+        Assertions.assertEquals(-1, g.findEdge(3, 0));
+    }
+}
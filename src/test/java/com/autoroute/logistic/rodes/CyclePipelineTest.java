@@ -0,0 +1,107 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class CyclePipelineTest {
+
+    private static final int SIDE = 30;
+
+    @Test
+    void candidatesSearchStopsWhenConsumerReturnsFalse() {
+        final Graph g = compactGraph(buildFullGraph());
+        final Vertex start = g.getVertices().get(0);
+        List<Cycle> candidates = new ArrayList<>();
+        Assertions.assertTrue(g.findCandidateCycles(start, new Random(1), null, candidates::add));
+        Assertions.assertTrue(candidates.size() > 10);
+
+        List<Cycle> firstCandidates = new ArrayList<>();
+        Assertions.assertFalse(g.findCandidateCycles(start, new Random(1), null, c -> {
+            firstCandidates.add(c);
+            return firstCandidates.size() < 10;
+        }));
+        Assertions.assertEquals(10, firstCandidates.size());
+    }
+
+    @Test
+    void pipelineStopsWhenThereAreEnoughCycles() {
+        final Graph fullGraph = buildFullGraph();
+        final Graph g = compactGraph(fullGraph);
+        final Vertex start = g.getVertices().get(0);
+        final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(fullGraph, fullGraph.findByIdentificator(start.getIdentificator()));
+        dijkstra.run();
+
+        final int maxCycles = 3;
+        final int evaluators = 3;
+        final ExecutorService pool = Executors.newFixedThreadPool(1 + evaluators);
+        try {
+            final var limits = new CycleSearchLimits(maxCycles, Integer.MAX_VALUE, 60_000, 600_000);
+            final List<Cycle> found = Collections.synchronizedList(new ArrayList<>());
+            final var pipeline = new CyclePipeline(g, start, dijkstra, limits, found::add);
+            final List<Cycle> cycles = pipeline.run(pool, 1, evaluators, 8, 42);
+            // evaluators which were in the middle of the check can add a cycle after the cancel
+            Assertions.assertTrue(cycles.size() >= maxCycles && cycles.size() < maxCycles + evaluators);
+            Assertions.assertEquals(cycles.size(), found.size());
+            for (int i = 0; i < cycles.size(); i++) {
+                Assertions.assertTrue(found.contains(cycles.get(i)));
+                if (i > 0) {
+                    Assertions.assertTrue(cycles.get(i - 1).quality() >= cycles.get(i).quality());
+                }
+                final List<Vertex> vertices = cycles.get(i).getVertices();
+                Assertions.assertEquals(vertices.get(0), vertices.get(vertices.size() - 1));
+                for (int j = 0; j < i; j++) {
+                    Assertions.assertNotEquals(vertices, cycles.get(j).getVertices());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void serialSearchStopsByTimeBudget() {
+        final Graph fullGraph = buildFullGraph();
+        final Graph g = compactGraph(fullGraph);
+        final Vertex start = g.getVertices().get(0);
+        final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(fullGraph, fullGraph.findByIdentificator(start.getIdentificator()));
+        dijkstra.run();
+
+        final var limits = new CycleSearchLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, 60_000, 1_000);
+        List<Cycle> found = new ArrayList<>();
+        final var pipeline = new CyclePipeline(g, start, dijkstra, limits, found::add);
+        final long startTime = System.currentTimeMillis();
+        final List<Cycle> cycles = pipeline.runSerial(42);
+        // the search is stopped between checks of cycles
+        Assertions.assertTrue(System.currentTimeMillis() - startTime < 30_000);
+        Assertions.assertEquals(found.size(), cycles.size());
+        Assertions.assertEquals(cycles, pipeline.getBest());
+    }
+
+    private static Graph compactGraph(Graph fullGraph) {
+        final Graph g = fullGraph.copy();
+        g.setFullGraph(fullGraph);
+        g.calculateDistanceForNeighbours();
+        g.buildIdentificatorToVertexMap();
+        return g;
+    }
+
+    private static Graph buildFullGraph() {
+        final double step = 0.002; // ~200m
+        List<Vertex> vertices = TestGraphs.regularGrid(SIDE, step);
+        final Graph fullGraph = new Graph(vertices, 10, 30);
+        fullGraph.buildCsrGraph();
+        fullGraph.calculateDistanceForNeighbours();
+        fullGraph.buildIdentificatorToVertexMap();
+        DijkstraCache.createCache(fullGraph);
+        return fullGraph;
+    }
+}
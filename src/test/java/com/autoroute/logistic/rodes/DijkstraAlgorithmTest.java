@@ -1,5 +1,178 @@
 package com.autoroute.logistic.rodes;
 
+import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.PathView;
+import com.autoroute.logistic.rodes.dijkstra.SearchMode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 class DijkstraAlgorithmTest {
 
-}
\ No newline at end of file
+    private static final TestGraphs.EdgeProbabilities EDGES = new TestGraphs.EdgeProbabilities(0.75, 1, 0);
+
+    // O(n^2) dijkstra without heap
+    private static double[] slowDistances(Graph g, int start) {
+        final int n = g.size();
+        double[] distances = new double[n];
+        boolean[] done = new boolean[n];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        distances[start] = 0;
+        for (int iteration = 0; iteration < n; iteration++) {
+            int v = -1;
+            for (int i = 0; i < n; i++) {
+                if (!done[i] && (v == -1 || distances[i] < distances[v])) {
+                    v = i;
+                }
+            }
+            done[v] = true;
+            final Vertex vertex = g.getVertexById(v);
+            for (Vertex u : vertex.getNeighbors()) {
+                final double d = distances[v] + (float) LatLon.distanceKM(vertex.getLatLon(), u.getLatLon());
+                distances[u.getId()] = Math.min(distances[u.getId()], d);
+            }
+        }
+        return distances;
+    }
+
+    private static double routeDistance(Graph g, List<Vertex> route) {
+        final CsrGraph csr = g.getCsrGraph();
+        double distance = 0;
+        for (int i = 1; i < route.size(); i++) {
+            final int e = csr.findEdge(route.get(i - 1).getId(), route.get(i).getId());
+            Assertions.assertNotEquals(-1, e);
+            distance += csr.weight(e);
+        }
+        return distance;
+    }
+
+    @Test
+    void singleSource() {
+        final Graph g = TestGraphs.grid(20, new Random(1), EDGES);
+        final Vertex start = g.getVertexById(0);
+        final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, start);
+        dijkstra.run();
+
+        final double[] expected = slowDistances(g, 0);
+        for (Vertex v : g.getVertices()) {
+            Assertions.assertEquals(expected[v.getId()], dijkstra.getDistance(v), 1e-9);
+            final List<Vertex> route = dijkstra.getRouteFromFullGraph(v);
+            Assertions.assertSame(start, route.get(0));
+            Assertions.assertSame(v, route.get(route.size() - 1));
+            Assertions.assertEquals(expected[v.getId()], routeDistance(g, route), 1e-9);
+        }
+    }
+
+    @Test
+    void singleSourceWithin() {
+        final Graph g = TestGraphs.grid(20, new Random(5), EDGES);
+        final Vertex start = g.getVertexById(0);
+        final double[] expected = slowDistances(g, 0);
+        final double maxDistance = 5;
+        final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, start);
+        dijkstra.runWithin(maxDistance);
+        Assertions.assertTrue(dijkstra.getSettledCount() < g.size());
+
+        int farVertices = 0;
+        for (Vertex v : g.getVertices()) {
+            if (expected[v.getId()] <= maxDistance) {
+                Assertions.assertEquals(expected[v.getId()], dijkstra.getDistance(v), 1e-9);
+            } else {
+                farVertices++;
+                Assertions.assertEquals(Double.POSITIVE_INFINITY, dijkstra.getDistance(v));
+            }
+            final List<Vertex> route = dijkstra.getRouteFromFullGraph(v);
+            Assertions.assertSame(start, route.get(0));
+            Assertions.assertSame(v, route.get(route.size() - 1));
+            Assertions.assertEquals(expected[v.getId()], routeDistance(g, route), 1e-9);
+        }
+        Assertions.assertTrue(farVertices > 0);
+    }
+
+    @Test
+    void pointToPoint() {
+        final Random random = new Random(2);
+        final Graph g = TestGraphs.grid(20, random, EDGES);
+        for (int i = 0; i < 50; i++) {
+            final Vertex start = g.getVertexById(random.nextInt(g.size()));
+            final Vertex finish = g.getVertexById(random.nextInt(g.size()));
+            final double[] expected = slowDistances(g, start.getId());
+
+            final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, start);
+            dijkstra.run(finish);
+            final List<Vertex> route = dijkstra.getRouteFromFullGraph(finish);
+            Assertions.assertEquals(start.getIdentificator(), route.get(0).getIdentificator());
+            Assertions.assertEquals(finish.getIdentificator(), route.get(route.size() - 1).getIdentificator());
+            Assertions.assertEquals(expected[finish.getId()], routeDistance(g, route), 1e-9);
+        }
+    }
+
+    @Test
+    void bidirectional() {
+        final Random random = new Random(4);
+        final Graph g = TestGraphs.grid(25, random, EDGES);
+        for (boolean withLandmarks : new boolean[]{false, true}) {
+            if (withLandmarks) {
+                g.buildLandmarks();
+            }
+            for (int i = 0; i < 50; i++) {
+                final Vertex start = g.getVertexById(random.nextInt(g.size()));
+                final Vertex finish = i == 0 ? start : g.getVertexById(random.nextInt(g.size()));
+                final double[] expected = slowDistances(g, start.getId());
+
+                final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, start);
+                dijkstra.run(finish, SearchMode.BIDIRECTIONAL);
+                final List<Vertex> route = dijkstra.getRouteFromFullGraph(finish);
+                Assertions.assertSame(start, route.get(0));
+                Assertions.assertSame(finish, route.get(route.size() - 1));
+                Assertions.assertEquals(expected[finish.getId()], routeDistance(g, route), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void routeAfterAnotherSearchInThread() {
+        final Graph g = TestGraphs.grid(10, new Random(3), EDGES);
+        final Vertex start = g.getVertexById(0);
+        final Vertex finish = g.getVertexById(g.size() - 1);
+        final DijkstraAlgorithm first = new DijkstraAlgorithm(g, start);
+        first.run(finish);
+        final DijkstraAlgorithm second = new DijkstraAlgorithm(g, finish);
+        second.run(start);
+
+        final List<Vertex> route = first.getRouteFromFullGraph(finish);
+        Assertions.assertSame(start, route.get(0));
+        Assertions.assertSame(finish, route.get(route.size() - 1));
+    }
+
+    @Test
+    void pathViewOfCachedRoute() {
+        final Graph g = TestGraphs.grid(15, new Random(5), EDGES);
+        g.calculateDistanceForNeighbours();
+        final Vertex start = g.getVertexById(0);
+        final Vertex finish = g.getVertexById(g.size() - 1);
+        final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, start);
+        dijkstra.run(finish);
+        final List<Vertex> route = dijkstra.getRouteFromFullGraph(finish);
+
+        // the second call is a hit of the cache
+        final PathView view = dijkstra.getPath(finish);
+        Assertions.assertEquals(route.size(), view.size());
+        for (int i = 0; i < route.size(); i++) {
+            Assertions.assertSame(route.get(i), view.vertex(i));
+        }
+        Assertions.assertEquals(Cycle.getCycleDistance(route), view.distanceKM(), 1e-9);
+
+        final List<Vertex> out = new ArrayList<>(List.of(finish, start));
+        view.addTo(out, 1);
+        Assertions.assertEquals(route.size() + 2, out.size());
+        Assertions.assertSame(finish, out.get(0));
+        Assertions.assertEquals(route, out.subList(1, out.size() - 1));
+        Assertions.assertSame(start, out.get(out.size() - 1));
+    }
+}
@@ -0,0 +1,60 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class EdgeExpansionsTest {
+
+    @Test
+    void expandsEdgesOfSuperVertexes() {
+        final int side = 40;
+        final double step = 0.0005; // ~50m
+        List<Vertex> vertices = TestGraphs.regularGrid(side, step);
+        final long startIdentificator = vertices.get(0).getIdentificator();
+        final Graph fullGraph = new Graph(vertices, 10, 100);
+        fullGraph.buildCsrGraph();
+        fullGraph.calculateDistanceForNeighbours();
+        fullGraph.buildIdentificatorToVertexMap();
+        DijkstraCache.createCache(fullGraph);
+        final Graph g = fullGraph.copy();
+        g.setFullGraph(fullGraph);
+        g.createSuperVertexesByGrid(1, startIdentificator);
+        g.buildEdgeExpansions();
+        final EdgeExpansions expansions = g.getEdgeExpansions();
+        Assertions.assertNotNull(expansions);
+
+        int superEdges = 0;
+        for (Vertex v : g.getVertices()) {
+            for (Vertex u : v.getNeighbors()) {
+                if (!v.isSuperVertex() && !u.isSuperVertex()) {
+                    Assertions.assertFalse(expansions.contains(v, u));
+                    continue;
+                }
+                superEdges++;
+                Assertions.assertTrue(expansions.contains(v, u));
+                List<Vertex> path = new ArrayList<>();
+                path.add(fullGraph.findByIdentificator(v.getIdentificator()));
+                expansions.appendPath(v, u, path, fullGraph);
+                Assertions.assertEquals(u.getIdentificator(), path.get(path.size() - 1).getIdentificator());
+                for (int i = 1; i < path.size(); i++) {
+                    Assertions.assertTrue(path.get(i - 1).containsNeighbor(path.get(i)));
+                }
+                Assertions.assertEquals(Cycle.getCycleDistance(path), expansions.length(v, u), 1e-9);
+                Assertions.assertTrue(expansions.length(v, u) >= LatLon.distanceKM(v.getLatLon(), u.getLatLon()) - 1e-9);
+            }
+        }
+        Assertions.assertTrue(superEdges > 0);
+        Assertions.assertEquals(superEdges / 2, expansions.size());
+        // vertex of the full graph with the same id is not a vertex of the compact graph
+        final Vertex superVertex = g.getVertices().stream().filter(Vertex::isSuperVertex).findFirst().orElseThrow();
+        final Vertex neighbor = superVertex.getNeighbors().get(0);
+        if (superVertex.getIdentificator() != fullGraph.getVertexById(superVertex.getId()).getIdentificator()) {
+            Assertions.assertFalse(expansions.contains(fullGraph.getVertexById(superVertex.getId()), neighbor));
+        }
+    }
+}
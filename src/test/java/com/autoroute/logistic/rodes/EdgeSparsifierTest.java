@@ -0,0 +1,83 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class EdgeSparsifierTest {
+
+    // grid with diagonals, ~100m between vertices, so it is split into several tiles
+    private static List<Vertex> buildGrid(int side) {
+        Vertex[][] grid = new Vertex[side][side];
+        List<Vertex> vertices = new ArrayList<>();
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                grid[i][j] = new Vertex(vertices.size(), vertices.size(), new LatLon(35 + i * 0.001, 33 + j * 0.0012), null);
+                vertices.add(grid[i][j]);
+                if (i > 0) {
+                    TestGraphs.add(grid[i][j], grid[i - 1][j]);
+                }
+                if (j > 0) {
+                    TestGraphs.add(grid[i][j], grid[i][j - 1]);
+                }
+                if (i > 0 && j > 0) {
+                    TestGraphs.add(grid[i][j], grid[i - 1][j - 1]);
+                }
+            }
+        }
+        return vertices;
+    }
+
+    private static Set<Long> edges(List<Vertex> vertices) {
+        Set<Long> edges = new HashSet<>();
+        for (Vertex v : vertices) {
+            for (Vertex u : v.getNeighbors()) {
+                Assertions.assertTrue(u.containsNeighbor(v));
+                edges.add(v.getIdentificator() * vertices.size() + u.getIdentificator());
+            }
+        }
+        return edges;
+    }
+
+    private static int countReachable(List<Vertex> vertices) {
+        boolean[] visited = new boolean[vertices.size()];
+        List<Vertex> queue = new ArrayList<>();
+        queue.add(vertices.get(0));
+        visited[0] = true;
+        for (int i = 0; i < queue.size(); i++) {
+            for (Vertex u : queue.get(i).getNeighbors()) {
+                if (!visited[u.getId()]) {
+                    visited[u.getId()] = true;
+                    queue.add(u);
+                }
+            }
+        }
+        return queue.size();
+    }
+
+    @Test
+    void keepsGraphConnected() {
+        final List<Vertex> vertices = buildGrid(120);
+        final int edgesBefore = edges(vertices).size();
+        final int removed = new EdgeSparsifier(vertices, 0).run();
+
+        Assertions.assertTrue(removed > 0);
+        Assertions.assertEquals(edgesBefore - 2 * removed, edges(vertices).size());
+        Assertions.assertEquals(vertices.size(), countReachable(vertices));
+        Assertions.assertEquals(3, vertices.get(0).getNeighbors().size());
+    }
+
+    @Test
+    void deterministic() {
+        final List<Vertex> first = buildGrid(120);
+        final List<Vertex> second = buildGrid(120);
+        new EdgeSparsifier(first, 0).run();
+        new EdgeSparsifier(second, 0).run();
+        Assertions.assertEquals(edges(first), edges(second));
+    }
+}
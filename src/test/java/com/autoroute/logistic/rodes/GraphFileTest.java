@@ -0,0 +1,76 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class GraphFileTest {
+
+    private static CsrGraph buildGraph() {
+        final String ref = "M1";
+        final Vertex v0 = new Vertex(0, 100, new LatLon(34.1, 33.1), ref);
+        final Vertex v1 = new Vertex(1, 101, new LatLon(34.2, 33.2), ref);
+        final Vertex v2 = new Vertex(2, 102, new LatLon(34.3, 33.3), "Б1");
+        final Vertex v3 = new Vertex(3, 103, new LatLon(34.4, 33.4), null);
+        TestGraphs.add(v0, v1);
+        TestGraphs.add(v1, v2);
+        TestGraphs.add(v2, v3);
+        TestGraphs.add(v0, v3);
+        return CsrGraph.fromVertices(List.of(v0, v1, v2, v3));
+    }
+
+    @Test
+    void writeAndRead() throws IOException {
+        final CsrGraph g = buildGraph();
+        final Path path = Files.createTempDirectory("graph").resolve("test.graph");
+        GraphFile.write(g, path);
+
+        final CsrGraph read = GraphFile.read(path);
+        Assertions.assertTrue(read.isDirect());
+        Assertions.assertEquals(g.size(), read.size());
+        Assertions.assertEquals(g.edgesCount(), read.edgesCount());
+        for (int v = 0; v < g.size(); v++) {
+            Assertions.assertEquals(g.identificator(v), read.identificator(v));
+            Assertions.assertEquals(g.latLon(v), read.latLon(v));
+            Assertions.assertEquals(g.ref(v), read.ref(v));
+            Assertions.assertEquals(g.edgesStart(v), read.edgesStart(v));
+            Assertions.assertEquals(g.edgesEnd(v), read.edgesEnd(v));
+        }
+        for (int e = 0; e < g.edgesCount(); e++) {
+            Assertions.assertEquals(g.target(e), read.target(e));
+            Assertions.assertEquals(g.weight(e), read.weight(e), 0);
+        }
+        Assertions.assertSame(read.ref(0), read.ref(1));
+
+        final Graph graph = Graph.fromCsrGraph(read, 10, 100);
+        Assertions.assertEquals(4, graph.size());
+        final Vertex v0 = graph.getVertexById(0);
+        Assertions.assertEquals(100, v0.getIdentificator());
+        Assertions.assertEquals(2, v0.getNeighbors().size());
+        Assertions.assertTrue(v0.containsNeighbor(graph.getVertexById(1)));
+        Assertions.assertTrue(v0.containsNeighbor(graph.getVertexById(3)));
+    }
+
+    @Test
+    void wrongVersion() throws IOException {
+        final Path path = Files.createTempDirectory("graph").resolve("test.graph");
+        GraphFile.write(buildGraph(), path);
+        final byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, GraphFile.VERSION + 1);
+        Files.write(path, bytes);
+
+        try {
+            GraphFile.read(path);
+            Assertions.fail("should fail");
+        } catch (IllegalStateException e) {
+            Assertions.assertTrue(e.getMessage().contains("version"));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class GraphRegistryTest {
+
+    private static Graph frozenGraph() {
+        final Vertex v1 = new Vertex(0, 10, new LatLon(1, 1), null);
+        final Vertex v2 = new Vertex(1, 11, new LatLon(1, 2), null);
+        v1.addNeighbor(v2);
+        v2.addNeighbor(v1);
+        final Graph g = new Graph(List.of(v1, v2), 10, 100);
+        g.buildCsrGraph();
+        g.freeze();
+        return g;
+    }
+
+    @Test
+    void sharesGraphWhileItIsUsed() {
+        final GraphRegistry registry = new GraphRegistry();
+        final Path path = Path.of("100_a.graph");
+        final AtomicInteger loads = new AtomicInteger();
+
+        final Graph g1 = registry.acquire(path, () -> {
+            loads.incrementAndGet();
+            return frozenGraph();
+        });
+        final Graph g2 = registry.acquire(path, () -> {
+            loads.incrementAndGet();
+            return frozenGraph();
+        });
+        Assertions.assertSame(g1, g2);
+        Assertions.assertEquals(1, loads.get());
+
+        final Graph other = registry.acquire(Path.of("100_b.graph"), GraphRegistryTest::frozenGraph);
+        Assertions.assertNotSame(g1, other);
+        Assertions.assertEquals(2, registry.size());
+
+        registry.release(path);
+        registry.release(path);
+        registry.release(Path.of("100_b.graph"));
+        Assertions.assertEquals(0, registry.size());
+
+        final Graph g3 = registry.acquire(path, GraphRegistryTest::frozenGraph);
+        Assertions.assertNotSame(g1, g3);
+        registry.release(path);
+    }
+
+    @Test
+    void waitsForGraphWhichIsLoading() throws InterruptedException {
+        final GraphRegistry registry = new GraphRegistry();
+        final Path path = Path.of("100_a.graph");
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final Graph[] graphs = new Graph[2];
+
+        Thread first = new Thread(() -> graphs[0] = registry.acquire(path, () -> {
+            loading.countDown();
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return frozenGraph();
+        }));
+        first.start();
+        Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Thread second = new Thread(() -> graphs[1] = registry.acquire(path, () -> {
+            throw new AssertionError("the graph is loaded by the first request");
+        }));
+        second.start();
+        Thread.sleep(100);
+        loaded.countDown();
+        first.join();
+        second.join();
+        Assertions.assertNotNull(graphs[0]);
+        Assertions.assertSame(graphs[0], graphs[1]);
+    }
+
+    @Test
+    void failedLoadIsNotShared() {
+        final GraphRegistry registry = new GraphRegistry();
+        final Path path = Path.of("100_a.graph");
+        Assertions.assertThrows(IllegalStateException.class, () -> registry.acquire(path, () -> {
+            throw new IllegalStateException("no roads");
+        }));
+        Assertions.assertEquals(0, registry.size());
+        Assertions.assertNotNull(registry.acquire(path, GraphRegistryTest::frozenGraph));
+        registry.release(path);
+    }
+}
@@ -1,9 +1,17 @@
 package com.autoroute.logistic.rodes;
 
 import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.SpatialIndex;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraCache;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 class GraphTest {
 
     private int id = 0;
@@ -22,6 +30,219 @@ class GraphTest {
     void dfs() {
     }
 
+    @Test
+    void dfsSkipsVerticesTooFarFromStart() {
+        final int side = 20;
+        final double step = 0.01; // ~1km
+        List<Vertex> vertices = TestGraphs.regularGrid(side, step);
+        final int maxKM = 10;
+        final Graph fullGraph = new Graph(vertices, 5, maxKM);
+        fullGraph.buildCsrGraph();
+        fullGraph.calculateDistanceForNeighbours();
+        fullGraph.buildIdentificatorToVertexMap();
+        DijkstraCache.createCache(fullGraph);
+        final Graph g = fullGraph.copy();
+        g.setFullGraph(fullGraph);
+        g.calculateDistanceForNeighbours();
+        g.buildIdentificatorToVertexMap();
+        final Vertex start = g.getVertices().get(0);
+        final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(fullGraph, fullGraph.findByIdentificator(start.getIdentificator()));
+        dijkstra.run();
+
+        List<Cycle> candidates = new ArrayList<>();
+        Assertions.assertTrue(g.findCandidateCycles(start, new Random(1), dijkstra, candidates::add));
+        Assertions.assertFalse(candidates.isEmpty());
+        for (Cycle cycle : candidates) {
+            for (Vertex v : cycle.getVertices()) {
+                Assertions.assertTrue(2 * dijkstra.getDistance(v) <= maxKM * 1.1);
+            }
+            Assertions.assertTrue(Cycle.getCycleDistance(cycle.getVertices()) <= maxKM * 1.1 + 1e-9);
+        }
+        final DfsStats stats = g.getDfsStats();
+        Assertions.assertEquals(1, stats.getRuns());
+        Assertions.assertTrue(stats.getPruned() > 0);
+        Assertions.assertTrue(stats.getTooLong() > 0);
+        Assertions.assertTrue(stats.getExpanded() < side * side);
+
+        // without the start dijkstra the dfs visits all vertices
+        final long expanded = stats.getExpanded();
+        g.findCandidateCycles(start, new Random(1), null, c -> true);
+        Assertions.assertTrue(stats.getExpanded() - expanded >= side * side);
+    }
+
+    @Test
+    void dfsStopsWhenItShouldNotKeepGoing() {
+        final int side = 40;
+        List<Vertex> vertices = TestGraphs.regularGrid(side, 0.01);
+        final Graph g = new Graph(vertices, 5, 10);
+        final Vertex start = g.getVertices().get(0);
+        final int[] checks = new int[1];
+        // the consumer never stops the dfs, only the check does
+        Assertions.assertFalse(g.findCandidateCycles(start, new Random(1), null, c -> true, () -> {
+            checks[0]++;
+            return false;
+        }));
+        Assertions.assertEquals(1, checks[0]);
+        Assertions.assertEquals(Graph.DFS_CHECK_EXPANSIONS, g.getDfsStats().getExpanded());
+    }
+
+    @Test
+    void copy() {
+        final Vertex v1 = new Vertex(0, 10, new LatLon(1, 1), "ref");
+        final Vertex v2 = new Vertex(1, 11, new LatLon(1, 2), null);
+        final Vertex v3 = new Vertex(2, 12, new LatLon(2, 2), null);
+        v1.addNeighbor(v2);
+        v2.addNeighbor(v1);
+        v2.addNeighbor(v3);
+        v3.addNeighbor(v2);
+        final Graph g = new Graph(List.of(v1, v2, v3), 10, 100);
+
+        final Graph copy = g.copy();
+        Assertions.assertEquals(3, copy.size());
+        final Vertex c1 = copy.getVertexById(0);
+        final Vertex c2 = copy.getVertexById(1);
+        Assertions.assertEquals(10, c1.getIdentificator());
+        Assertions.assertSame(v1.getRef(), c1.getRef());
+        Assertions.assertEquals(2, c2.getNeighbors().size());
+
+        c2.removeNeighbor(c1);
+        Assertions.assertEquals(1, c2.getNeighbors().size());
+        Assertions.assertEquals(2, v2.getNeighbors().size());
+        Assertions.assertTrue(v2.containsNeighbor(v1));
+    }
+
+    @Test
+    void frozenGraphIsCopiedForRequests() {
+        final Vertex v1 = new Vertex(0, 10, new LatLon(1, 1), null);
+        final Vertex v2 = new Vertex(1, 11, new LatLon(1, 2), null);
+        final Vertex v3 = new Vertex(2, 12, new LatLon(2, 2), null);
+        v1.addNeighbor(v2);
+        v2.addNeighbor(v1);
+        v2.addNeighbor(v3);
+        v3.addNeighbor(v2);
+        final Graph g = new Graph(List.of(v1, v2, v3), 10, 100);
+        g.buildCsrGraph();
+        g.freeze();
+
+        Assertions.assertTrue(g.isFrozen());
+        Assertions.assertSame(v2, g.findByIdentificator(11));
+        Assertions.assertSame(v3, g.findNearestVertex(new LatLon(2, 2.1)));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> g.getVertices().remove(0));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> v2.getNeighbors().clear());
+
+        final Graph copy = g.copy(20, 30);
+        Assertions.assertFalse(copy.isFrozen());
+        copy.getVertexById(1).removeNeighbor(copy.getVertexById(0));
+        Assertions.assertEquals(1, copy.getVertexById(1).getNeighbors().size());
+        Assertions.assertEquals(2, v2.getNeighbors().size());
+    }
+
+    @Test
+    void dfsDependsOnlyOnSeed() throws InterruptedException {
+        final int side = 8;
+        List<Vertex> vertices = new ArrayList<>();
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                final Vertex v = new Vertex(vertices.size(), vertices.size(), new LatLon(35 + i * 0.01, 33 + j * 0.01), null);
+                vertices.add(v);
+                if (i > 0) {
+                    v.addNeighbor(vertices.get(v.getId() - side));
+                    vertices.get(v.getId() - side).addNeighbor(v);
+                }
+                if (j > 0) {
+                    v.addNeighbor(vertices.get(v.getId() - 1));
+                    vertices.get(v.getId() - 1).addNeighbor(v);
+                }
+            }
+        }
+        final Graph g = new Graph(vertices, 5, 10);
+        final Vertex start = g.getVertexById(0);
+
+        // searches over one graph from several threads don't see each other
+        final int threads = 4;
+        List<List<String>> results = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final List<String> result = new ArrayList<>();
+            results.add(result);
+            workers.add(new Thread(() -> {
+                for (int run = 0; run < 20; run++) {
+                    g.findCandidateCycles(start, new Random(run), null, c -> result.add(c.getVertices().toString()));
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assertions.assertFalse(results.get(0).isEmpty());
+        for (List<String> result : results) {
+            Assertions.assertEquals(results.get(0), result);
+        }
+    }
+
+    @Test
+    void createSuperVertexesByGrid() {
+        final int side = 40;
+        final double step = 0.0005; // ~50m
+        List<Vertex> vertices = TestGraphs.regularGrid(side, step);
+        final long startIdentificator = vertices.get(0).getIdentificator();
+        final Graph g = new Graph(vertices, 10, 100);
+        g.setFullGraph(new Graph(vertices, 10, 100));
+        g.createSuperVertexesByGrid(1, startIdentificator);
+        g.checkGraph(startIdentificator);
+
+        Assertions.assertTrue(g.size() < side * side);
+        final List<Vertex> superVertexes = g.getVertices().stream().filter(Vertex::isSuperVertex).toList();
+        Assertions.assertFalse(superVertexes.isEmpty());
+        for (int i = 0; i < g.size(); i++) {
+            final Vertex v = g.getVertexById(i);
+            Assertions.assertEquals(i, v.getId());
+            for (Vertex u : v.getNeighbors()) {
+                Assertions.assertSame(u, g.getVertexById(u.getId()));
+            }
+        }
+        for (Vertex v : superVertexes) {
+            for (Vertex u : g.getVertices()) {
+                if (u != v && u.getIdentificator() != startIdentificator) {
+                    Assertions.assertTrue(LatLon.distanceKM(v.getLatLon(), u.getLatLon()) >= 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    void createSuperVertexesByGridOverSeveralTiles() {
+        final int side = 150;
+        final double step = 0.001; // ~110m, the grid has 4 tiles of merging in a row
+        List<Vertex> vertices = TestGraphs.regularGrid(side, step);
+        final long startIdentificator = vertices.get(side * side / 2 + side / 2).getIdentificator();
+        final Graph g = new Graph(vertices, 10, 100);
+        g.setFullGraph(new Graph(vertices, 10, 100));
+        g.createSuperVertexesByGrid(1, startIdentificator);
+        g.checkGraph(startIdentificator);
+
+        Assertions.assertTrue(g.getVertices().stream().anyMatch(v -> v.getIdentificator() == startIdentificator));
+        final List<Vertex> superVertexes = g.getVertices().stream().filter(Vertex::isSuperVertex).toList();
+        Assertions.assertTrue(superVertexes.size() > 16, "super vertexes: " + superVertexes.size());
+        for (int i = 0; i < g.size(); i++) {
+            final Vertex v = g.getVertexById(i);
+            Assertions.assertEquals(i, v.getId());
+            for (Vertex u : v.getNeighbors()) {
+                Assertions.assertSame(u, g.getVertexById(u.getId()));
+                Assertions.assertTrue(u.containsNeighbor(v));
+            }
+        }
+        SpatialIndex index = new SpatialIndex(g.getVertices());
+        for (Vertex v : superVertexes) {
+            for (Vertex u : index.findInRadius(v.getLatLon(), 1)) {
+                Assertions.assertTrue(u == v || u.getIdentificator() == startIdentificator);
+            }
+        }
+    }
+
 //    @Test
 //    void findNearestVertex() {
 //        List<Vertex> l = new ArrayList<>();
@@ -0,0 +1,85 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraAlgorithm;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class RejectedCycleCacheTest {
+
+    @Test
+    void clearedWhenFull() {
+        RejectedCycleCache cache = new RejectedCycleCache(2);
+        cache.put(1, RejectedCycleCache.Reason.DISTANCE);
+        cache.put(2, RejectedCycleCache.Reason.SMALL);
+        Assertions.assertEquals(RejectedCycleCache.Reason.DISTANCE, cache.get(1));
+        Assertions.assertEquals(RejectedCycleCache.Reason.SMALL, cache.get(2));
+        cache.put(3, RejectedCycleCache.Reason.IN_CITY);
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertNull(cache.get(1));
+        Assertions.assertEquals(RejectedCycleCache.Reason.IN_CITY, cache.get(3));
+    }
+
+    @Test
+    void repeatedCyclesAreSkipped() {
+        final int side = 10;
+        final double step = 0.01; // ~1km
+        Vertex[][] grid = new Vertex[side][side];
+        List<Vertex> vertices = new ArrayList<>();
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                grid[i][j] = new Vertex(vertices.size(), vertices.size(), new LatLon(35 + i * step, 33 + j * step), null);
+                vertices.add(grid[i][j]);
+                if (i > 0) {
+                    grid[i][j].addNeighbor(grid[i - 1][j]);
+                    grid[i - 1][j].addNeighbor(grid[i][j]);
+                }
+                if (j > 0) {
+                    grid[i][j].addNeighbor(grid[i][j - 1]);
+                    grid[i][j - 1].addNeighbor(grid[i][j]);
+                }
+            }
+        }
+        final Graph fullGraph = new Graph(vertices, 10, 30);
+        fullGraph.buildCsrGraph();
+        fullGraph.calculateDistanceForNeighbours();
+        fullGraph.buildIdentificatorToVertexMap();
+        DijkstraCache.createCache(fullGraph);
+        final Graph g = fullGraph.copy();
+        g.setFullGraph(fullGraph);
+        g.calculateDistanceForNeighbours();
+        g.buildIdentificatorToVertexMap();
+        final Vertex start = g.getVertices().get(0);
+        final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(fullGraph, fullGraph.findByIdentificator(start.getIdentificator()));
+        dijkstra.run();
+
+        List<Cycle> result = new ArrayList<>();
+        g.findAllCycles(start, result, dijkstra, new Random(1));
+        final RejectedCycleCache cache = g.getRejectedCycles();
+        // all cycles of 10x10 grid are too small or too short
+        Assertions.assertTrue(result.isEmpty());
+        final long checked = rejects(cache) - cache.getSkipped();
+        Assertions.assertTrue(checked > 0);
+        Assertions.assertTrue(cache.size() > 0);
+
+        final long skippedBefore = cache.getSkipped();
+        g.findAllCycles(start, result, dijkstra, new Random(1));
+        Assertions.assertTrue(result.isEmpty());
+        // the same dfs gives the same cycles, all of them are rejected by the cache
+        Assertions.assertEquals(checked, rejects(cache) - cache.getSkipped());
+        Assertions.assertTrue(cache.getSkipped() > skippedBefore);
+    }
+
+    private static long rejects(RejectedCycleCache cache) {
+        long rejects = 0;
+        for (RejectedCycleCache.Reason reason : RejectedCycleCache.Reason.values()) {
+            rejects += cache.getRejects(reason);
+        }
+        return rejects;
+    }
+}
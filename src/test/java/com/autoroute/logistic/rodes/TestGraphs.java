@@ -0,0 +1,91 @@
+package com.autoroute.logistic.rodes;
+
+import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.rodes.dijkstra.DijkstraCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Graphs of tests: grids of roads with vertices in rows and columns.
+ */
+public final class TestGraphs {
+
+    /**
+     * Probabilities of edges from a vertex of the grid to its upper, left and upper-left neighbours.
+     */
+    public record EdgeProbabilities(double vertical, double horizontal, double diagonal) {
+    }
+
+    public static final EdgeProbabilities ALL_EDGES = new EdgeProbabilities(1, 1, 0);
+
+    private TestGraphs() {
+    }
+
+    public static void add(Vertex v1, Vertex v2) {
+        v1.addNeighbor(v2);
+        v2.addNeighbor(v1);
+    }
+
+    /**
+     * Grid with ~1km between rows and columns and jittered coordinates, identificators are ids + 1000.
+     * Vertices which are not reachable from the first one are removed. The graph has the csr graph,
+     * the map of identificators and the dijkstra cache.
+     */
+    public static Graph grid(int side, Random random, EdgeProbabilities probabilities) {
+        Vertex[][] grid = new Vertex[side][side];
+        List<Vertex> vertices = new ArrayList<>();
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                final LatLon latLon = new LatLon(35 + i * 0.01 + random.nextDouble() * 0.005, 33 + j * 0.01 + random.nextDouble() * 0.005);
+                grid[i][j] = new Vertex(vertices.size(), 1000 + vertices.size(), latLon, null);
+                vertices.add(grid[i][j]);
+                if (i > 0 && hasEdge(probabilities.vertical(), random)) {
+                    add(grid[i][j], grid[i - 1][j]);
+                }
+                if (j > 0 && hasEdge(probabilities.horizontal(), random)) {
+                    add(grid[i][j], grid[i][j - 1]);
+                }
+                if (i > 0 && j > 0 && hasEdge(probabilities.diagonal(), random)) {
+                    add(grid[i][j], grid[i - 1][j - 1]);
+                }
+            }
+        }
+        final Graph g = new Graph(vertices, 10, 100);
+        g.removeNotVisitedVertexes(g.getVertexById(0));
+        g.buildCsrGraph();
+        g.buildIdentificatorToVertexMap();
+        DijkstraCache.createCache(g);
+        return g;
+    }
+
+    // random isn't used for edges which are always or never added
+    private static boolean hasEdge(double probability, Random random) {
+        if (probability <= 0 || probability >= 1) {
+            return probability >= 1;
+        }
+        return random.nextDouble() < probability;
+    }
+
+    /**
+     * Grid with all vertical and horizontal edges and the step in degrees, identificators are equal to ids.
+     */
+    public static List<Vertex> regularGrid(int side, double step) {
+        Vertex[][] grid = new Vertex[side][side];
+        List<Vertex> vertices = new ArrayList<>();
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                grid[i][j] = new Vertex(vertices.size(), vertices.size(), new LatLon(35 + i * step, 33 + j * step), null);
+                vertices.add(grid[i][j]);
+                if (i > 0) {
+                    add(grid[i][j], grid[i - 1][j]);
+                }
+                if (j > 0) {
+                    add(grid[i][j], grid[i][j - 1]);
+                }
+            }
+        }
+        return vertices;
+    }
+}
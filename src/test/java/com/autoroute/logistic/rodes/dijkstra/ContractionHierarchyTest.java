@@ -0,0 +1,121 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.rodes.CsrGraph;
+import com.autoroute.logistic.rodes.Graph;
+import com.autoroute.logistic.rodes.TestGraphs;
+import com.autoroute.logistic.rodes.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class ContractionHierarchyTest {
+
+    private static final TestGraphs.EdgeProbabilities EDGES = new TestGraphs.EdgeProbabilities(0.75, 0.8, 1.0 / 6);
+
+    private static void checkPath(CsrGraph g, int[] path, int from, int to, double expectedDistance) {
+        Assertions.assertEquals(from, path[0]);
+        Assertions.assertEquals(to, path[path.length - 1]);
+        double distance = 0;
+        for (int i = 1; i < path.length; i++) {
+            final int e = g.findEdge(path[i - 1], path[i]);
+            Assertions.assertNotEquals(-1, e);
+            distance += g.weight(e);
+        }
+        Assertions.assertEquals(expectedDistance, distance, 1e-6);
+    }
+
+    @Test
+    void sameDistancesAsDijkstra() {
+        final Random random = new Random(1);
+        final Graph g = TestGraphs.grid(25, random, EDGES);
+        final CsrGraph csr = g.getCsrGraph();
+        final ContractionHierarchy ch = ContractionHierarchy.build(csr);
+        Assertions.assertTrue(ch.matches(csr));
+
+        for (int i = 0; i < 5; i++) {
+            final Vertex start = g.getVertexById(random.nextInt(g.size()));
+            final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, start);
+            dijkstra.run();
+            for (Vertex finish : g.getVertices()) {
+                final double expected = dijkstra.getDistance(finish);
+                Assertions.assertEquals(expected, ch.distance(start.getId(), finish.getId()), 1e-6);
+                final int[] path = ch.findPath(start.getId(), finish.getId());
+                Assertions.assertNotNull(path);
+                checkPath(csr, path, start.getId(), finish.getId(), expected);
+            }
+        }
+    }
+
+    @Test
+    void dijkstraUsesHierarchy() {
+        final Random random = new Random(2);
+        final Graph g = TestGraphs.grid(15, random, EDGES);
+        g.setContractionHierarchy(ContractionHierarchy.build(g.getCsrGraph()));
+        for (int i = 0; i < 30; i++) {
+            final Vertex start = g.getVertexById(random.nextInt(g.size()));
+            final Vertex finish = g.getVertexById(random.nextInt(g.size()));
+            final DijkstraAlgorithm expected = new DijkstraAlgorithm(g, start);
+            expected.run();
+
+            final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, start);
+            dijkstra.run(finish);
+            final List<Vertex> route = dijkstra.getRouteFromFullGraph(finish);
+            final int[] path = route.stream().mapToInt(Vertex::getId).toArray();
+            checkPath(g.getCsrGraph(), path, start.getId(), finish.getId(), expected.getDistance(finish));
+        }
+    }
+
+    @Test
+    void writeAndRead() throws IOException {
+        final Random random = new Random(3);
+        final Graph g = TestGraphs.grid(12, random, EDGES);
+        final ContractionHierarchy ch = ContractionHierarchy.build(g.getCsrGraph());
+        final Path path = Files.createTempDirectory("graph").resolve("test.graph.ch");
+        ch.write(path);
+
+        final ContractionHierarchy read = ContractionHierarchy.read(path);
+        Assertions.assertTrue(read.matches(g.getCsrGraph()));
+        Assertions.assertFalse(read.matches(shifted(g.getVertices(), 0.001)));
+        Assertions.assertEquals(ch.edgesCount(), read.edgesCount());
+        for (int i = 0; i < 50; i++) {
+            final int from = random.nextInt(g.size());
+            final int to = random.nextInt(g.size());
+            Assertions.assertEquals(ch.distance(from, to), read.distance(from, to), 0);
+            Assertions.assertArrayEquals(ch.findPath(from, to), read.findPath(from, to));
+        }
+    }
+
+    @Test
+    void doesNotMatchGraphOfTheSameShape() {
+        final Graph g = TestGraphs.grid(12, new Random(4), EDGES);
+        final ContractionHierarchy ch = ContractionHierarchy.build(g.getCsrGraph());
+        Assertions.assertTrue(ch.matches(shifted(g.getVertices(), 0)));
+        // the same vertices and edges, but other weights
+        final CsrGraph other = shifted(g.getVertices(), 0.001);
+        Assertions.assertEquals(g.getCsrGraph().size(), other.size());
+        Assertions.assertEquals(g.getCsrGraph().edgesCount(), other.edgesCount());
+        Assertions.assertFalse(ch.matches(other));
+    }
+
+    // copy of the graph with the first vertex moved by lat
+    private static CsrGraph shifted(List<Vertex> vertices, double lat) {
+        List<Vertex> copy = new ArrayList<>();
+        for (Vertex v : vertices) {
+            final LatLon latLon = v.getId() == 0 ? new LatLon(v.getLatLon().lat() + lat, v.getLatLon().lon()) : v.getLatLon();
+            copy.add(new Vertex(v.getId(), v.getIdentificator(), latLon, null));
+        }
+        for (Vertex v : vertices) {
+            for (Vertex u : v.getNeighbors()) {
+                copy.get(v.getId()).addNeighbor(copy.get(u.getId()));
+            }
+        }
+        return CsrGraph.fromVertices(copy);
+    }
+}
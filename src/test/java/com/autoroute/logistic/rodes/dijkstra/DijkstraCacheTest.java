@@ -0,0 +1,202 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.LatLon;
+import com.autoroute.logistic.rodes.Graph;
+import com.autoroute.logistic.rodes.Vertex;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+class DijkstraCacheTest {
+
+    private static Graph buildGraph(int size) {
+        List<Vertex> vertices = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            vertices.add(new Vertex(i, i, new LatLon(35, 33 + i * 0.001), null));
+        }
+        final Graph g = new Graph(vertices, 10, 100);
+        g.buildIdentificatorToVertexMap();
+        return g;
+    }
+
+    private static List<Vertex> path(Graph g, int from, int to) {
+        List<Vertex> path = new ArrayList<>();
+        final int step = from <= to ? 1 : -1;
+        for (int i = from; i != to + step; i += step) {
+            path.add(g.getVertexById(i));
+        }
+        return path;
+    }
+
+    @Nullable
+    private static List<Vertex> get(Graph g, DijkstraCache cache, int v, int u) {
+        IntArrayList ids = new IntArrayList();
+        if (!cache.get(new DijkstraCache.Pair(v, u), ids)) {
+            return null;
+        }
+        List<Vertex> route = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            route.add(g.getVertexById(ids.getInt(i)));
+        }
+        return route;
+    }
+
+    @Test
+    void symmetric() {
+        final Graph g = buildGraph(10);
+        final DijkstraCache cache = DijkstraCache.createCache(g);
+        cache.put(new DijkstraCache.Pair(7, 2), path(g, 7, 2));
+
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertTrue(cache.contains(new DijkstraCache.Pair(2, 7)));
+        Assertions.assertEquals(path(g, 7, 2), get(g, cache, 7, 2));
+        Assertions.assertEquals(path(g, 2, 7), get(g, cache, 2, 7));
+        Assertions.assertNull(get(g, cache, 2, 8));
+        Assertions.assertEquals(2, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+
+        cache.put(new DijkstraCache.Pair(2, 7), path(g, 2, 7));
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void subpath() {
+        final Graph g = buildGraph(20);
+        final DijkstraCache cache = DijkstraCache.createCache(g);
+        cache.put(new DijkstraCache.Pair(15, 3), path(g, 15, 3));
+
+        Assertions.assertTrue(cache.contains(new DijkstraCache.Pair(5, 10)));
+        Assertions.assertEquals(path(g, 5, 10), get(g, cache, 5, 10));
+        Assertions.assertEquals(path(g, 14, 4), get(g, cache, 14, 4));
+        Assertions.assertEquals(List.of(g.getVertexById(7)), get(g, cache, 7, 7));
+        Assertions.assertFalse(cache.contains(new DijkstraCache.Pair(2, 10)));
+        Assertions.assertNull(get(g, cache, 2, 10));
+        Assertions.assertEquals(3, cache.getSubpathHits());
+        Assertions.assertEquals(0, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+
+        // evicted paths are not used
+        final DijkstraCache small = DijkstraCache.createCache(g, 1, Long.MAX_VALUE);
+        small.put(new DijkstraCache.Pair(0, 10), path(g, 0, 10));
+        for (int i = 11; i < 20; i++) {
+            for (int j = i + 2; j < 20; j++) {
+                small.put(new DijkstraCache.Pair(i, j), path(g, i, j));
+            }
+        }
+        Assertions.assertTrue(small.getEvictions() > 0);
+        Assertions.assertEquals(small.contains(new DijkstraCache.Pair(0, 10)), small.contains(new DijkstraCache.Pair(2, 5)));
+    }
+
+    @Test
+    void bounded() {
+        final Graph g = buildGraph(100);
+        final DijkstraCache cache = DijkstraCache.createCache(g, 160, Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            for (int j = i; j < 100; j++) {
+                cache.put(new DijkstraCache.Pair(i, j), path(g, i, j));
+            }
+        }
+        Assertions.assertTrue(cache.size() <= 160);
+        Assertions.assertEquals(100 * 101 / 2 - cache.size(), cache.getEvictions());
+
+        final DijkstraCache byBytes = DijkstraCache.createCache(g, Integer.MAX_VALUE, 64 * 1024);
+        for (int i = 0; i < 100; i++) {
+            for (int j = i; j < 100; j++) {
+                byBytes.put(new DijkstraCache.Pair(i, j), path(g, i, j));
+            }
+        }
+        Assertions.assertTrue(byBytes.getBytes() <= 64 * 1024);
+        Assertions.assertTrue(byBytes.getEvictions() > 0);
+    }
+
+    @Test
+    void evictedPathsAreRemovedFromIndex() {
+        final Graph g = buildGraph(50);
+        final DijkstraCache cache = DijkstraCache.createCache(g, 4, Long.MAX_VALUE);
+        final long indexBytes = cache.getBytes();
+        Assertions.assertTrue(indexBytes >= 50L * SubpathIndex.PATHS_PER_VERTEX * Long.BYTES);
+        for (int i = 0; i < 40; i++) {
+            cache.put(new DijkstraCache.Pair(i, i + 10), path(g, i, i + 10));
+        }
+        Assertions.assertTrue(cache.getEvictions() > 0);
+        Assertions.assertEquals(cache.size(), cache.getSubpathIndex().size());
+        Assertions.assertFalse(cache.contains(new DijkstraCache.Pair(1, 5)));
+        // the newest path is always kept
+        Assertions.assertEquals(path(g, 45, 40), get(g, cache, 45, 40));
+
+        // the index doesn't fit into a tiny cache, so it's turned off
+        final DijkstraCache tiny = DijkstraCache.createCache(g, 100, 1024);
+        Assertions.assertEquals(0, tiny.getBytes());
+        tiny.put(new DijkstraCache.Pair(0, 10), path(g, 0, 10));
+        Assertions.assertNull(get(g, tiny, 2, 5));
+    }
+
+    @Test
+    void pathCodec() {
+        final Random random = new Random(1);
+        for (int length = 1; length < 100; length++) {
+            int[] ids = new int[length];
+            for (int i = 0; i < length; i++) {
+                ids[i] = i % 3 == 0 ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(1000);
+            }
+            final IntArrayList decoded = new IntArrayList();
+            decoded.add(-1);
+            PathCodec.decode(PathCodec.encode(ids), length, decoded);
+            Assertions.assertEquals(length + 1, decoded.size());
+            for (int i = 0; i < length; i++) {
+                Assertions.assertEquals(ids[i], decoded.getInt(i + 1));
+            }
+        }
+    }
+
+    @Test
+    void concurrent() {
+        final Graph g = buildGraph(200);
+        final DijkstraCache cache = DijkstraCache.createCache(g);
+        IntStream.range(0, 200).parallel().forEach(i -> {
+            for (int j = 0; j < 200; j++) {
+                final List<Vertex> cached = get(g, cache, i, j);
+                if (cached == null) {
+                    cache.put(new DijkstraCache.Pair(i, j), path(g, i, j));
+                } else {
+                    Assertions.assertEquals(path(g, i, j), cached);
+                }
+            }
+        });
+        Assertions.assertTrue(cache.size() <= cache.getMisses());
+        Assertions.assertEquals(200 * 200, cache.getHits() + cache.getSubpathHits() + cache.getMisses());
+    }
+
+    @Test
+    void algorithmAsksCacheOncePerRoute() {
+        final Graph g = buildGraph(10);
+        for (int i = 1; i < g.size(); i++) {
+            g.getVertexById(i).addNeighbor(g.getVertexById(i - 1));
+            g.getVertexById(i - 1).addNeighbor(g.getVertexById(i));
+        }
+        g.buildCsrGraph();
+        g.calculateDistanceForNeighbours();
+        final DijkstraCache cache = DijkstraCache.createCache(g);
+        final Vertex start = g.getVertexById(2);
+        final Vertex finish = g.getVertexById(7);
+
+        final DijkstraAlgorithm miss = new DijkstraAlgorithm(g, start);
+        miss.run(finish, SearchMode.UNIDIRECTIONAL);
+        Assertions.assertEquals(path(g, 2, 7), miss.getPath(finish).toList());
+        Assertions.assertEquals(0, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+
+        final DijkstraAlgorithm hit = new DijkstraAlgorithm(g, start);
+        hit.run(finish, SearchMode.UNIDIRECTIONAL);
+        Assertions.assertEquals(path(g, 2, 7), hit.getPath(finish).toList());
+        Assertions.assertEquals(path(g, 2, 7), hit.getRouteFromFullGraph(finish));
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+    }
+}
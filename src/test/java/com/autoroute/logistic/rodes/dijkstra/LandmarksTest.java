@@ -0,0 +1,89 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.rodes.Graph;
+import com.autoroute.logistic.rodes.TestGraphs;
+import com.autoroute.logistic.rodes.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+class LandmarksTest {
+
+    // rare vertical edges, so shortest paths have detours which straight-line distance doesn't see
+    private static final TestGraphs.EdgeProbabilities EDGES = new TestGraphs.EdgeProbabilities(0.2, 1, 0);
+
+    @Test
+    void lowerBound() {
+        final Random random = new Random(1);
+        final Graph g = TestGraphs.grid(30, random, EDGES);
+        final Landmarks landmarks = Landmarks.build(g.getCsrGraph(), Landmarks.DEFAULT_COUNT);
+        Assertions.assertEquals(Landmarks.DEFAULT_COUNT, landmarks.count());
+        Set<Integer> unique = new HashSet<>();
+        for (int i = 0; i < landmarks.count(); i++) {
+            unique.add(landmarks.landmark(i));
+        }
+        Assertions.assertEquals(landmarks.count(), unique.size());
+
+        for (int i = 0; i < 5; i++) {
+            final Vertex start = g.getVertexById(random.nextInt(g.size()));
+            final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, start);
+            dijkstra.run();
+            for (Vertex v : g.getVertices()) {
+                final double bound = landmarks.lowerBound(v.getId(), start.getId());
+                Assertions.assertTrue(bound <= dijkstra.getDistance(v));
+                Assertions.assertEquals(bound, landmarks.lowerBound(start.getId(), v.getId()), 0);
+            }
+        }
+        // bound to a landmark is exact up to rounding
+        final int landmark = landmarks.landmark(0);
+        final DijkstraAlgorithm fromLandmark = new DijkstraAlgorithm(g, g.getVertexById(landmark));
+        fromLandmark.run();
+        final Vertex v = g.getVertexById(g.size() / 2);
+        Assertions.assertEquals(fromLandmark.getDistance(v), landmarks.lowerBound(v.getId(), landmark), 0.01);
+    }
+
+    @Test
+    void settlesLessVertices() {
+        final Random random = new Random(3);
+        final Graph g = TestGraphs.grid(40, random, EDGES);
+        long settledWithoutLandmarks = 0;
+        List<Double> distances = new ArrayList<>();
+        List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            final int[] pair = {random.nextInt(g.size()), random.nextInt(g.size())};
+            pairs.add(pair);
+            final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, g.getVertexById(pair[0]));
+            dijkstra.run(g.getVertexById(pair[1]));
+            settledWithoutLandmarks += dijkstra.getSettledCount();
+            distances.add(routeDistance(g, dijkstra.getRouteFromFullGraph(g.getVertexById(pair[1]))));
+        }
+
+        g.buildLandmarks();
+        DijkstraCache.createCache(g);
+        long settledWithLandmarks = 0;
+        for (int i = 0; i < pairs.size(); i++) {
+            final int[] pair = pairs.get(i);
+            final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, g.getVertexById(pair[0]));
+            dijkstra.run(g.getVertexById(pair[1]));
+            settledWithLandmarks += dijkstra.getSettledCount();
+            final double distance = routeDistance(g, dijkstra.getRouteFromFullGraph(g.getVertexById(pair[1])));
+            Assertions.assertEquals(distances.get(i), distance, 1e-6);
+        }
+        Assertions.assertTrue(settledWithLandmarks < settledWithoutLandmarks);
+        Assertions.assertEquals(60, g.getDijkstraStats().getQueries());
+        Assertions.assertEquals(settledWithoutLandmarks + settledWithLandmarks, g.getDijkstraStats().getSettled());
+    }
+
+    private static double routeDistance(Graph g, List<Vertex> route) {
+        double distance = 0;
+        for (int i = 1; i < route.size(); i++) {
+            distance += g.getCsrGraph().weight(g.getCsrGraph().findEdge(route.get(i - 1).getId(), route.get(i).getId()));
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,56 @@
+package com.autoroute.logistic.rodes.dijkstra;
+
+import com.autoroute.logistic.rodes.Graph;
+import com.autoroute.logistic.rodes.TestGraphs;
+import com.autoroute.logistic.rodes.Vertex;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+class MultiSourceSearchTest {
+
+    private static final TestGraphs.EdgeProbabilities EDGES = new TestGraphs.EdgeProbabilities(0.75, 1, 0);
+
+    @Test
+    void nearestSource() {
+        final Random random = new Random(1);
+        final Graph g = TestGraphs.grid(20, random, EDGES);
+        IntArrayList sources = new IntArrayList();
+        IntArrayList targets = new IntArrayList();
+        for (int i = 0; i < 5; i++) {
+            sources.add(random.nextInt(g.size()));
+        }
+        for (int i = 0; i < 10; i++) {
+            targets.add(random.nextInt(g.size()));
+        }
+        targets.add(targets.getInt(0));
+        targets.add(sources.getInt(0));
+
+        final MultiSourceSearch search = new MultiSourceSearch(g);
+        search.run(sources, targets);
+        Assertions.assertTrue(search.getSettledCount() <= g.size());
+
+        for (int i = 0; i < targets.size(); i++) {
+            final int target = targets.getInt(i);
+            double expected = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < sources.size(); j++) {
+                final DijkstraAlgorithm dijkstra = new DijkstraAlgorithm(g, g.getVertexById(sources.getInt(j)));
+                dijkstra.run();
+                expected = Math.min(expected, dijkstra.getDistance(g.getVertexById(target)));
+            }
+            Assertions.assertEquals(expected, search.getDistance(target), 1e-9);
+
+            final List<Vertex> route = search.getRoute(target);
+            Assertions.assertTrue(sources.contains(route.get(0).getId()));
+            Assertions.assertEquals(target, route.get(route.size() - 1).getId());
+            double distance = 0;
+            for (int j = 1; j < route.size(); j++) {
+                distance += g.getCsrGraph().weight(g.getCsrGraph().findEdge(route.get(j - 1).getId(), route.get(j).getId()));
+            }
+            Assertions.assertEquals(expected, distance, 1e-9);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.autoroute.telegram;
+
+import com.autoroute.logistic.LatLon;
+import com.autoroute.telegram.db.Row;
+import com.autoroute.telegram.db.State;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class JobQueueTest {
+
+    private static Row row(long chatId) {
+        return new Row(chatId, "user", chatId, State.SENT_DISTANCE, new LatLon(35, 33), 30, 60);
+    }
+
+    @Test
+    void takesJobsInOrder() throws InterruptedException {
+        JobQueue jobs = new JobQueue();
+        jobs.submit(row(1));
+        jobs.submit(row(2));
+        Assertions.assertEquals(2, jobs.size());
+
+        final JobQueue.Job first = jobs.take();
+        final JobQueue.Job second = jobs.take();
+        Assertions.assertEquals(1, first.row().chatId());
+        Assertions.assertEquals(2, second.row().chatId());
+        Assertions.assertTrue(first.queueWaitMs() >= 0);
+        Assertions.assertEquals(0, jobs.size());
+    }
+
+    @Test
+    void waitingWorkerGetsJobAtOnce() throws InterruptedException {
+        JobQueue jobs = new JobQueue();
+        final JobQueue.Job[] taken = new JobQueue.Job[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread worker = new Thread(() -> {
+            try {
+                taken[0] = jobs.take();
+                done.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        worker.start();
+        Thread.sleep(100);
+        final long submitted = System.currentTimeMillis();
+        jobs.submit(row(7));
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(7, taken[0].row().chatId());
+        Assertions.assertTrue(taken[0].submittedAtMs() >= submitted);
+        // no polling interval between the bot and a free worker
+        Assertions.assertTrue(taken[0].queueWaitMs() < 1000);
+        worker.join();
+    }
+
+    @Test
+    void queueWaitIsMeasuredUntilTake() throws InterruptedException {
+        JobQueue jobs = new JobQueue();
+        jobs.submit(row(1));
+        Thread.sleep(50);
+        final JobQueue.Job job = jobs.take();
+        Assertions.assertTrue(job.queueWaitMs() >= 50);
+        Assertions.assertEquals(job.takenAtMs() - job.submittedAtMs(), job.queueWaitMs());
+    }
+}